@@ -69,28 +69,38 @@ public class Content {
   public Fragment fragmentForIndex(int index) {
     Fragment fragment = null;
 
+    if (index == 0)
+      fragment = new ChannelAboutFragment();
+    else {
+      ListServiceRequest request = requestForIndex(index, mChannelList.currentChannelId());
+
+      if (request != null)
+        fragment = YouTubeGridFragment.newInstance(request);
+    }
+
+    if (fragment != null)
+      AppUtils.instance(mContext).saveSectionIndexForChannel(index, mChannelList.currentChannelId());
+
+    return fragment;
+  }
+
+  // the list a drawer section shows for a channel, null for sections that aren't a list (About)
+  public ListServiceRequest requestForIndex(int index, String channelId) {
     switch (index) {
-      case 0:
-        fragment = new ChannelAboutFragment();
-        break;
       case 1:
-        fragment = YouTubeGridFragment.newInstance(ListServiceRequest.relatedRequest(YouTubeAPI.RelatedPlaylistType.UPLOADS, mChannelList
-            .currentChannelId(), null, 50));
-        break;
+        return ListServiceRequest.relatedRequest(YouTubeAPI.RelatedPlaylistType.UPLOADS, channelId, null, 50);
       case 2:
-        fragment = YouTubeGridFragment.newInstance(ListServiceRequest.playlistsRequest(mChannelList
-            .currentChannelId(), null, 150));
-        break;
+        return ListServiceRequest.playlistsRequest(channelId, null, 150);
       case 3:
-        fragment = YouTubeGridFragment.newInstance(ListServiceRequest.relatedRequest(YouTubeAPI.RelatedPlaylistType.LIKES, mChannelList
-            .currentChannelId(), null, 50));
-        break;
+        return ListServiceRequest.relatedRequest(YouTubeAPI.RelatedPlaylistType.LIKES, channelId, null, 50);
     }
 
-    if (fragment != null)
-      AppUtils.instance(mContext).saveSectionIndexForChannel(index, mChannelList.currentChannelId());
+    return null;
+  }
 
-    return fragment;
+  // number of sections in the drawer, see drawerTitles()
+  public int sectionCount() {
+    return 4;
   }
 
   public boolean needsChannelSwitcher() {
@@ -113,6 +123,10 @@ public class Content {
     return mChannelList.channels();
   }
 
+  public String currentChannelId() {
+    return mChannelList.currentChannelId();
+  }
+
   public int currentChannelIndex() {
     return mChannelList.currentChannelIndex();
   }
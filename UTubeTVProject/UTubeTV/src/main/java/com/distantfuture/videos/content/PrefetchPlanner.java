@@ -0,0 +1,95 @@
+package com.distantfuture.videos.content;
+
+import android.content.Context;
+
+import com.distantfuture.videos.database.YouTubeData;
+import com.distantfuture.videos.misc.AppUtils;
+import com.distantfuture.videos.misc.DUtils;
+import com.distantfuture.videos.services.ListServiceRequest;
+import com.distantfuture.videos.services.ListServiceTask;
+import com.distantfuture.videos.services.RequestScheduler;
+import com.distantfuture.videos.services.YouTubeService;
+import com.distantfuture.videos.youtube.QuotaBudget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// warms the db for the lists the user is likely to open next: the other sections of the current channel, then
+// the next channels in the switcher at the section they were last left on.  Wifi only, skips lists that are still
+// fresh, and only a few lists per plan so we don't spend the quota on things nobody looks at
+public class PrefetchPlanner {
+  private static final int MAX_PREFETCHES = 4;
+  private static final int MAX_CHANNELS = 3;  // channels after the current one to look at
+  private final Context mContext;
+
+  public PrefetchPlanner(Context context) {
+    super();
+
+    mContext = context.getApplicationContext();
+  }
+
+  // called from YouTubeService on a worker thread
+  public void run() {
+    Content content = Content.instance();
+    AppUtils appUtils = AppUtils.instance(mContext);
+
+    if (content == null || !appUtils.isWiFi())
+      return;
+
+    // the budget belongs to the lists the user asks for
+    if (QuotaBudget.instance(mContext).isUnderPressure())
+      return;
+
+    int scheduled = 0;
+    for (ListServiceRequest request : candidates(content, appUtils)) {
+      if (scheduled == MAX_PREFETCHES)
+        break;
+
+      if (!ListServiceTask.isStale(mContext, request))
+        continue;
+
+      DUtils.log("prefetching: " + request.requestIdentifier());
+
+      YouTubeService.startListRequest(mContext, request, false, RequestScheduler.PRIORITY_PREFETCH);
+      scheduled++;
+    }
+  }
+
+  // most likely first
+  private List<ListServiceRequest> candidates(Content content, AppUtils appUtils) {
+    List<ListServiceRequest> result = new ArrayList<ListServiceRequest>();
+    String currentChannel = content.currentChannelId();
+    int currentSection = appUtils.savedSectionIndexForChannel(currentChannel);
+
+    // the rest of this channel, the section on screen is already loading
+    for (int section = 0; section < content.sectionCount(); section++) {
+      if (section != currentSection)
+        addRequest(result, content.requestForIndex(section, currentChannel));
+    }
+
+    // the channels after this one in the switcher, where the user left them
+    List<YouTubeData> channels = content.channels();
+    if (channels != null && channels.size() > 1) {
+      int current = content.currentChannelIndex();
+      int count = Math.min(MAX_CHANNELS, channels.size() - 1);
+
+      for (int i = 1; i <= count; i++) {
+        String channel = channels.get((current + i) % channels.size()).mChannel;
+        ListServiceRequest request = content.requestForIndex(appUtils.savedSectionIndexForChannel(channel), channel);
+
+        // About isn't a list, uploads is where people go from there
+        if (request == null)
+          request = content.requestForIndex(1, channel);
+
+        addRequest(result, request);
+      }
+    }
+
+    return result;
+  }
+
+  private void addRequest(List<ListServiceRequest> requests, ListServiceRequest request) {
+    if (request != null)
+      requests.add(request);
+  }
+}
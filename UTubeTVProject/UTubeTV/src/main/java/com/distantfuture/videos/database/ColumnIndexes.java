@@ -0,0 +1,58 @@
+package com.distantfuture.videos.database;
+
+import android.database.Cursor;
+import android.provider.BaseColumns;
+
+import java.util.Arrays;
+
+// column positions for a cursor, looked up once instead of calling getColumnIndex() for every column of every row.
+// All our tables use the same column names, -1 means the cursor doesn't have that column
+public class ColumnIndexes {
+  public final int id;
+  public final int request;
+  public final int video;
+  public final int playlist;
+  public final int channel;
+  public final int title;
+  public final int description;
+  public final int thumbnail;
+  public final int duration;
+  public final int itemCount;
+  public final int publishedDate;
+  public final int hidden;
+
+  public ColumnIndexes(Cursor cursor) {
+    super();
+
+    id = cursor.getColumnIndex(BaseColumns._ID);
+    request = cursor.getColumnIndex(DatabaseTables.VideoTable.Entry.COLUMN_NAME_REQUEST);
+    video = cursor.getColumnIndex(DatabaseTables.VideoTable.Entry.COLUMN_NAME_VIDEO);
+    playlist = cursor.getColumnIndex(DatabaseTables.PlaylistTable.Entry.COLUMN_NAME_PLAYLIST);
+    channel = cursor.getColumnIndex(DatabaseTables.ChannelTable.Entry.COLUMN_NAME_CHANNEL);
+    title = cursor.getColumnIndex(DatabaseTables.VideoTable.Entry.COLUMN_NAME_TITLE);
+    description = cursor.getColumnIndex(DatabaseTables.VideoTable.Entry.COLUMN_NAME_DESCRIPTION);
+    thumbnail = cursor.getColumnIndex(DatabaseTables.VideoTable.Entry.COLUMN_NAME_THUMBNAIL);
+    duration = cursor.getColumnIndex(DatabaseTables.VideoTable.Entry.COLUMN_NAME_DURATION);
+    itemCount = cursor.getColumnIndex(DatabaseTables.PlaylistTable.Entry.COLUMN_NAME_ITEM_COUNT);
+    publishedDate = cursor.getColumnIndex(DatabaseTables.VideoTable.Entry.COLUMN_NAME_PUBLISHED_DATE);
+    hidden = cursor.getColumnIndex(DatabaseTables.VideoTable.Entry.COLUMN_NAME_HIDDEN);
+  }
+
+  // remembers the indexes for the last set of columns seen, for callers that don't keep their own.  Keyed on the
+  // column names, not the cursor, so a closed cursor and its window aren't kept alive
+  public static class Cache {
+    private String[] mColumnNames;
+    private ColumnIndexes mIndexes;
+
+    public synchronized ColumnIndexes indexesFor(Cursor cursor) {
+      String[] columnNames = cursor.getColumnNames();
+
+      if (!Arrays.equals(columnNames, mColumnNames)) {
+        mColumnNames = columnNames;
+        mIndexes = new ColumnIndexes(cursor);
+      }
+
+      return mIndexes;
+    }
+  }
+}
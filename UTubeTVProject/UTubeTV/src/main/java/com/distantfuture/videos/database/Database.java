@@ -4,13 +4,19 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
 
 import com.distantfuture.videos.misc.DUtils;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Database extends SQLiteOpenHelper {
-  private static final int DATABASE_VERSION = 5011;
+  private static final int DATABASE_VERSION = 5021;
   private static final String DATABASE_NAME = "database.db";
   private static Database singleton = null;
   private final DatabaseTables mTables = new DatabaseTables();
@@ -19,6 +25,9 @@ public class Database extends SQLiteOpenHelper {
   private Database(Context context) {
     super(context, DATABASE_NAME, new CursorFactoryDebugger(false), DATABASE_VERSION);
 
+    // writes from the service don't block the grid's reads, readers get their own connections
+    setWriteAheadLoggingEnabled(true);
+
     boolean debugInfo = false;
     if (debugInfo) {
       final String path = context.getDatabasePath(DATABASE_NAME).getPath();
@@ -27,54 +36,136 @@ public class Database extends SQLiteOpenHelper {
     }
   }
 
-  public static Database instance(Context context) {
+  // synchronized, the first callers are often several worker threads at once and two helpers would mean two
+  // connection pools on the same file
+  public static synchronized Database instance(Context context) {
     if (singleton == null) {
-      singleton = new Database(context);
+      singleton = new Database(context.getApplicationContext());
     }
 
     return singleton;
   }
 
+  @Override
+  public void onConfigure(SQLiteDatabase db) {
+    // WAL is still safe with NORMAL, a power cut might lose the last commits but everything here can be fetched again
+    db.execSQL("PRAGMA synchronous = NORMAL");
+
+    // 2MB page cache (negative is KiB), the grid walks the request/date indexes over and over.  Only applies
+    // to this connection, the pool's read connections use the default
+    db.execSQL("PRAGMA cache_size = -2048");
+  }
+
   public void onCreate(SQLiteDatabase db) {
-    for (DatabaseTables.DatabaseTable table : DatabaseTables.tables()) {
+    for (DatabaseTables.DatabaseTable table : DatabaseTables.tables())
       db.execSQL(table.tableSQL());
 
-      // not every table defines an index, check for null
-      String indexSQL = table.indexSQL();
-      if (indexSQL != null)
-        db.execSQL(indexSQL);
-    }
+    createIndexes(db);
+    createNaturalKeyIndexes(db);
+    createFullTextIndexes(db);
+
+    db.execSQL(PagingCheckpoints.tableSQL());
+    db.execSQL(FullDescriptions.tableSQL());
+    db.execSQL(RequestInfo.tableSQL());
   }
 
+  // a migration that throws isn't caught, the upgrade is rolled back rather than the user's data dropped
   public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    if (!DatabaseMigrations.migrate(db, oldVersion, newVersion))
+      recreate(db);
+  }
+
+  // no way back to an older schema, start over
+  public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    recreate(db);
+  }
+
+  private void recreate(SQLiteDatabase db) {
     final String DROP_TABLE = "DROP TABLE IF EXISTS ";
 
-    // don't upgrade, just drop and start over
-    for (DatabaseTables.DatabaseTable table : DatabaseTables.tables())
+    for (DatabaseTables.DatabaseTable table : DatabaseTables.tables()) {
+      db.execSQL(DROP_TABLE + DatabaseTables.fullTextTableName(table.tableName()));
       db.execSQL(DROP_TABLE + table.tableName());
+    }
+    db.execSQL(DROP_TABLE + PagingCheckpoints.tableName());
+    db.execSQL(DROP_TABLE + FullDescriptions.tableName());
+    db.execSQL(DROP_TABLE + RequestInfo.tableName());
 
-    // recreate
     onCreate(db);
   }
 
-  public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-    onUpgrade(db, oldVersion, newVersion);
+  // all use IF NOT EXISTS, safe to run on an existing database
+  static void createIndexes(SQLiteDatabase db) {
+    for (DatabaseTables.DatabaseTable table : DatabaseTables.tables()) {
+      for (String indexSQL : table.indexSQL())
+        db.execSQL(indexSQL);
+    }
+  }
+
+  // separate from createIndexes(), an older database needs its duplicates removed before these will build
+  static void createNaturalKeyIndexes(SQLiteDatabase db) {
+    for (DatabaseTables.DatabaseTable table : DatabaseTables.tables()) {
+      String indexSQL = DatabaseTables.naturalKeyIndexSQL(table);
+
+      if (indexSQL != null)
+        db.execSQL(indexSQL);
+    }
+  }
+
+  // the FTS tables and the triggers that keep them in sync with the content tables
+  static void createFullTextIndexes(SQLiteDatabase db) {
+    for (DatabaseTables.DatabaseTable table : DatabaseTables.tables()) {
+      for (String sql : table.fullTextSQL())
+        db.execSQL(sql);
+    }
+  }
+
+  // every write goes through these instead of beginTransaction() and endTransaction(), an immediate transaction is enough with
+  // WAL and DatabaseMetrics learns a write is in progress
+  static void beginWrite(SQLiteDatabase db) {
+    db.beginTransactionNonExclusive();
+    DatabaseMetrics.writeStarted();
+  }
+
+  static void endWrite(SQLiteDatabase db) {
+    try {
+      db.endTransaction();
+    } finally {
+      DatabaseMetrics.writeEnded();
+    }
   }
 
   public Cursor getCursor(DatabaseQuery query) {
+    return getCursor(query, null);
+  }
+
+  // cancellationSignal can be null, if it's cancelled the query stops and OperationCanceledException is thrown
+  public Cursor getCursor(DatabaseQuery query, CancellationSignal cancellationSignal) {
     SQLiteDatabase db = getReadableDatabase();
     Cursor cursor = null;
 
+    long start = SystemClock.uptimeMillis();
+    boolean contended = DatabaseMetrics.writerActive();
+
     try {
-      cursor = db.query(query.mTable,                     // The table to query
+      cursor = db.query(false,                        // not distinct
+          query.mTable,                     // The table to query
           query.mProjection,                     // The columns to return
           query.mSelection,                      // The columns for the WHERE clause
           query.mSelectionArgs,                  // The values for the WHERE clause
           null,                           // don't group the rows
           null,                           // don't filter by row groups
-          query.mOrderBy                            // The sort order
-      );
+          query.mOrderBy,                            // The sort order
+          null,                           // no limit
+          cancellationSignal);
+
+      // the query runs when the first window is filled, do it here so the wait is measured.  The cursor would
+      // do this on the same thread for the loader anyway
+      cursor.getCount();
 
+      DatabaseMetrics.recordRead(SystemClock.uptimeMillis() - start, contended || DatabaseMetrics.writerActive());
+    } catch (OperationCanceledException e) {
+      throw e;  // the loader expects this
     } catch (Exception e) {
       DUtils.log("Database.getCursor exception: " + e.getMessage());
     }
@@ -82,6 +173,54 @@ public class Database extends SQLiteOpenHelper {
     return cursor;
   }
 
+  // the query plan regression check behind the dev tools menu.  Runs EXPLAIN QUERY PLAN on the unfiltered grid
+  // queries and returns the steps that scan a table or sort in a temp b-tree rather than use the request indexes,
+  // empty if they're all fine.  Filtered queries aren't checked, they go through the full text index and sort
+  // title matches first, which always needs a temp b-tree
+  public List<String> checkQueryPlans() {
+    List<String> result = new ArrayList<String>();
+    DatabaseTables.DatabaseTable[] tables = {DatabaseTables.videoTable(), DatabaseTables.playlistTable()};
+    int[] flags = {DatabaseTables.VISIBLE_ITEMS, DatabaseTables.ALL_ITEMS};
+
+    for (DatabaseTables.DatabaseTable table : tables) {
+      for (int flag : flags) {
+        DatabaseQuery query = table.queryParams(flag, "plan-check", null);
+
+        for (String detail : queryPlan(query)) {
+          // "SCAN TABLE videos" on older SQLite, "SCAN videos" on newer
+          boolean scan = detail.startsWith("SCAN ") && !detail.contains("VIRTUAL TABLE");
+
+          if (scan || detail.contains("TEMP B-TREE"))
+            result.add(table.tableName() + ": " + detail);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private List<String> queryPlan(DatabaseQuery query) {
+    List<String> result = new ArrayList<String>();
+    SQLiteDatabase db = getReadableDatabase();
+    String sql = SQLiteQueryBuilder.buildQueryString(false, query.mTable, query.mProjection, query.mSelection, null, null, query.mOrderBy, null);
+    Cursor cursor = null;
+
+    try {
+      cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, query.mSelectionArgs);
+
+      int detailColumn = cursor.getColumnIndex("detail");
+      while (cursor.moveToNext())
+        result.add(cursor.getString(detailColumn));
+    } catch (Exception e) {
+      DUtils.log("Database.queryPlan exception: " + e.getMessage());
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+
+    return result;
+  }
+
   public static class DatabaseQuery {
     public String mTable;
     public String mSelection;
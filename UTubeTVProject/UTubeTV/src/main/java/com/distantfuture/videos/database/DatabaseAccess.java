@@ -3,13 +3,18 @@ package com.distantfuture.videos.database;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
 
 import com.distantfuture.videos.misc.DUtils;
 import com.distantfuture.videos.services.ListServiceRequest;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class DatabaseAccess {
   private Database mDB;
@@ -30,53 +35,188 @@ public class DatabaseAccess {
   }
 
   public void deleteAllRows(String requestIdentifier) {
+    deleteAllRows(requestIdentifier, false);
+  }
+
+  // keepHidden leaves the rows the user hid so that state comes back with the list
+  public void deleteAllRows(String requestIdentifier, boolean keepHidden) {
     SQLiteDatabase db = mDB.getWritableDatabase();
+    int result = 0;
 
+    Database.beginWrite(db);
     try {
-      Database.DatabaseQuery queryParams = mTable.queryParams(DatabaseTables.ALL_ITEMS, requestIdentifier, null);
+      Database.DatabaseQuery queryParams = mTable.queryParams(keepHidden ? DatabaseTables.VISIBLE_ITEMS : DatabaseTables.ALL_ITEMS, requestIdentifier, null);
 
-      int result = db.delete(mTable.tableName(), queryParams.mSelection, queryParams.mSelectionArgs);
+      result = db.delete(mTable.tableName(), queryParams.mSelection, queryParams.mSelectionArgs);
 
-      if (result > 0)
-        notifyProviderOfChange();
+      if (result > 0 && hasFullDescriptions())
+        FullDescriptions.removeOrphans(db);
 
+      db.setTransactionSuccessful();
     } catch (Exception e) {
       DUtils.log("deleteAllRows exception: " + e.getMessage());
+    } finally {
+      Database.endWrite(db);
     }
+
+    if (result > 0)
+      notifyProviderOfChange(requestIdentifier);
   }
 
   public void deleteItem(Long id) {
     SQLiteDatabase db = mDB.getWritableDatabase();
+    int result = 0;
 
+    Database.beginWrite(db);
     try {
-      int result = db.delete(mTable.tableName(), whereClauseForID(), whereArgsForID(id));
-
-      if (result > 0)
-        notifyProviderOfChange();
+      result = db.delete(mTable.tableName(), whereClauseForID(), whereArgsForID(id));
 
+      db.setTransactionSuccessful();
     } catch (Exception e) {
       DUtils.log("deleteItem exception: " + e.getMessage());
+    } finally {
+      Database.endWrite(db);
     }
+
+    if (result > 0)
+      notifyProviderOfChange(null);  // don't know the request, notifies the whole table
   }
 
+  // inserts the items, or updates the row already there for the same natural key (request and video or
+  // playlist id).  One transaction and the same two compiled statements for the whole batch
   public void insertItems(List<YouTubeData> items) {
-    if (items != null) {
-      // Gets the data repository in write mode
-      SQLiteDatabase db = mDB.getWritableDatabase();
-
-      db.beginTransaction();
-      try {
-        for (YouTubeData item : items)
-          db.insert(mTable.tableName(), null, mTable.contentValuesForItem(item));
-
-        db.setTransactionSuccessful();
-
-        notifyProviderOfChange();
-      } catch (Exception e) {
-        DUtils.log("Insert item exception: " + e.getMessage());
-      } finally {
-        db.endTransaction();
+    if (items == null || items.isEmpty())
+      return;
+
+    SQLiteDatabase db = mDB.getWritableDatabase();
+    Set<String> requests = new HashSet<String>();
+    SQLiteStatement insert = null;
+    SQLiteStatement update = null;
+
+    Database.beginWrite(db);
+    try {
+      // first, the full text index triggers read these
+      if (hasFullDescriptions())
+        FullDescriptions.save(db, items);
+
+      insert = db.compileStatement(insertSQL());
+
+      String updateSQL = updateByNaturalKeySQL();
+      if (updateSQL != null)
+        update = db.compileStatement(updateSQL);
+
+      for (YouTubeData item : items) {
+        boolean updated = false;
+
+        if (update != null) {
+          update.clearBindings();
+          mTable.bindItem(update, item);
+
+          updated = update.executeUpdateDelete() > 0;
+        }
+
+        if (!updated) {
+          insert.clearBindings();
+          mTable.bindItem(insert, item);
+
+          insert.executeInsert();
+        }
+
+        requests.add(item.mRequest);
       }
+
+      db.setTransactionSuccessful();
+    } catch (Exception e) {
+      DUtils.log("insertItems exception: " + e.getMessage());
+    } finally {
+      Database.endWrite(db);
+
+      closeStatement(insert);
+      closeStatement(update);
+    }
+
+    // notify after the commit so loaders see the new rows
+    for (String request : requests)
+      notifyProviderOfChange(request);
+  }
+
+  // deletes the request's rows whose video or playlist id isn't in keepIds, what a refresh does with the rows
+  // that didn't come back this time.  The ids go in a temp table so it's one DELETE however long the list is
+  public void deleteItemsNotIn(String requestIdentifier, Set<String> keepIds) {
+    String[] keyColumns = mTable.naturalKeyColumns();
+
+    if (keyColumns.length != 2) {
+      DUtils.log("deleteItemsNotIn: table has no content id");
+      return;
+    }
+
+    final String requestCol = keyColumns[0];
+    final String contentCol = keyColumns[1];
+    final String keepTable = "temp.keep_ids";
+    SQLiteDatabase db = mDB.getWritableDatabase();
+    SQLiteStatement insert = null;
+    SQLiteStatement delete = null;
+    int deleted = 0;
+
+    Database.beginWrite(db);
+    try {
+      db.execSQL("CREATE TEMP TABLE IF NOT EXISTS keep_ids (id TEXT PRIMARY KEY)");
+      db.execSQL("DELETE FROM " + keepTable);
+
+      insert = db.compileStatement("INSERT OR IGNORE INTO " + keepTable + " (id) VALUES (?)");
+      for (String id : keepIds) {
+        insert.bindString(1, id);
+        insert.executeInsert();
+      }
+
+      delete = db.compileStatement("DELETE FROM " + mTable.tableName() + " WHERE " + requestCol + " = ? AND (" + contentCol + " IS NULL OR " + contentCol + " NOT IN (SELECT id FROM " + keepTable + "))");
+      delete.bindString(1, requestIdentifier);
+      deleted = delete.executeUpdateDelete();
+
+      db.execSQL("DELETE FROM " + keepTable);
+
+      if (deleted > 0 && hasFullDescriptions())
+        FullDescriptions.removeOrphans(db);
+
+      db.setTransactionSuccessful();
+    } catch (Exception e) {
+      DUtils.log("deleteItemsNotIn exception: " + e.getMessage());
+    } finally {
+      Database.endWrite(db);
+
+      closeStatement(insert);
+      closeStatement(delete);
+    }
+
+    if (deleted > 0)
+      notifyProviderOfChange(requestIdentifier);
+  }
+
+  // adds the estimated bytes of each request's rows to bytes, keyed by request identifier
+  public void addBytesByRequest(Map<String, Long> bytes) {
+    String sql = mTable.requestBytesSQL();
+
+    if (sql == null)
+      return;
+
+    Cursor cursor = null;
+    try {
+      cursor = mDB.getReadableDatabase().rawQuery(sql, null);
+
+      while (cursor.moveToNext()) {
+        String request = cursor.getString(0);
+
+        if (request != null) {
+          Long existing = bytes.get(request);
+
+          bytes.put(request, cursor.getLong(1) + (existing != null ? existing : 0));
+        }
+      }
+    } catch (Exception e) {
+      DUtils.log("addBytesByRequest exception: " + e.getMessage());
+    } finally {
+      if (cursor != null)
+        cursor.close();
     }
   }
 
@@ -104,11 +244,12 @@ public class DatabaseAccess {
     return mDB.getCursor(query);
   }
 
-  public Cursor getCursor(String selection, String[] selectionArgs, String[] projection) {
-    Database.DatabaseQuery query = new Database.DatabaseQuery(mTable.tableName(), selection, selectionArgs, projection, mTable
+  // orderBy can be null for the table's default order, cancellationSignal can be null
+  public Cursor getCursor(String selection, String[] selectionArgs, String[] projection, String orderBy, CancellationSignal cancellationSignal) {
+    Database.DatabaseQuery query = new Database.DatabaseQuery(mTable.tableName(), selection, selectionArgs, projection, orderBy != null ? orderBy : mTable
         .orderBy());
 
-    return mDB.getCursor(query);
+    return mDB.getCursor(query, cancellationSignal);
   }
 
   public List<YouTubeData> getItems(int flags, String requestIdentifier, int maxResults) {
@@ -121,22 +262,77 @@ public class DatabaseAccess {
     return result;
   }
 
+  // updates the rows by _id, all in one transaction
   public void updateItems(List<YouTubeData> items) {
     SQLiteDatabase db = mDB.getWritableDatabase();
+    Set<String> requests = new HashSet<String>();
+    SQLiteStatement update = null;
+    final int idIndex = mTable.contentColumns().length + 1;
 
+    Database.beginWrite(db);
     try {
+      update = db.compileStatement(updateByIdSQL());
+
       for (YouTubeData theItem : items) {
-        int result = db.update(mTable.tableName(), mTable.contentValuesForItem(theItem), whereClauseForID(), whereArgsForID(theItem.mID));
+        update.clearBindings();
+        mTable.bindItem(update, theItem);
+        update.bindLong(idIndex, theItem.mID);
+
+        int result = update.executeUpdateDelete();
 
         if (result != 1)
           DUtils.log("updateItem didn't return 1");
+
+        requests.add(theItem.mRequest);
       }
 
-      notifyProviderOfChange();
+      db.setTransactionSuccessful();
     } catch (Exception e) {
       DUtils.log("updateItem exception: " + e.getMessage());
+    } finally {
+      Database.endWrite(db);
+
+      closeStatement(update);
+    }
+
+    for (String request : requests)
+      notifyProviderOfChange(request);
+  }
+
+  // hide or unhide, only the hidden column is written so the full text index isn't touched
+  public void updateHidden(List<YouTubeData> items) {
+    SQLiteDatabase db = mDB.getWritableDatabase();
+    Set<String> requests = new HashSet<String>();
+    SQLiteStatement update = null;
+
+    Database.beginWrite(db);
+    try {
+      update = db.compileStatement("UPDATE " + mTable.tableName() + " SET " + DatabaseTables.VideoTable.Entry.COLUMN_NAME_HIDDEN + "=? WHERE _id=?");
+
+      for (YouTubeData item : items) {
+        update.clearBindings();
+        if (item.isHidden())
+          update.bindString(1, "");
+        else
+          update.bindNull(1);
+        update.bindLong(2, item.mID);
+
+        update.executeUpdateDelete();
+
+        requests.add(item.mRequest);
+      }
+
+      db.setTransactionSuccessful();
+    } catch (Exception e) {
+      DUtils.log("updateHidden exception: " + e.getMessage());
+    } finally {
+      Database.endWrite(db);
+
+      closeStatement(update);
     }
 
+    for (String request : requests)
+      notifyProviderOfChange(request);
   }
 
   public void updateItem(YouTubeData item) {
@@ -146,8 +342,63 @@ public class DatabaseAccess {
   // -----------------------------------------------------------------------------
   // private
 
-  private void notifyProviderOfChange() {
-    mContext.getContentResolver().notifyChange(YouTubeContentProvider.contentsURI(mContext), null);
+  // null requestIdentifier notifies every list in the table
+  private void notifyProviderOfChange(String requestIdentifier) {
+    mContext.getContentResolver().notifyChange(YouTubeContentProvider.requestURI(mContext, mTable.tableName(), requestIdentifier), null);
+  }
+
+  private String insertSQL() {
+    String[] columns = mTable.contentColumns();
+    StringBuilder result = new StringBuilder("INSERT INTO ").append(mTable.tableName()).append(" (");
+
+    for (int i = 0; i < columns.length; i++)
+      result.append(i > 0 ? "," : "").append(columns[i]);
+
+    result.append(") VALUES (");
+    for (int i = 0; i < columns.length; i++)
+      result.append(i > 0 ? ",?" : "?");
+
+    return result.append(")").toString();
+  }
+
+  // "SET title=?3, ..." with numbered parameters so bindItem() fills the SET and the WHERE in one go
+  private StringBuilder updateSQL() {
+    String[] columns = mTable.contentColumns();
+    StringBuilder result = new StringBuilder("UPDATE ").append(mTable.tableName()).append(" SET ");
+
+    for (int i = 0; i < columns.length; i++)
+      result.append(i > 0 ? "," : "").append(columns[i]).append("=?").append(i + 1);
+
+    return result;
+  }
+
+  private String updateByIdSQL() {
+    return updateSQL().append(" WHERE _id=?").append(mTable.contentColumns().length + 1).toString();
+  }
+
+  // null if the table has no natural key
+  private String updateByNaturalKeySQL() {
+    List<String> columns = Arrays.asList(mTable.contentColumns());
+    String[] keyColumns = mTable.naturalKeyColumns();
+
+    if (keyColumns.length == 0)
+      return null;
+
+    StringBuilder result = updateSQL().append(" WHERE ");
+    for (int i = 0; i < keyColumns.length; i++)
+      result.append(i > 0 ? " AND " : "").append(keyColumns[i]).append("=?").append(columns.indexOf(keyColumns[i]) + 1);
+
+    return result.toString();
+  }
+
+  private void closeStatement(SQLiteStatement statement) {
+    if (statement != null)
+      statement.close();
+  }
+
+  // the video and playlist tables only store a preview of the description
+  private boolean hasFullDescriptions() {
+    return mTable instanceof DatabaseTables.VideoTable || mTable instanceof DatabaseTables.PlaylistTable;
   }
 
   private String whereClauseForID() {
@@ -165,10 +416,11 @@ public class DatabaseAccess {
 
     try {
       int cnt = 0;
+      ColumnIndexes indexes = new ColumnIndexes(cursor);
 
       if (cursor.moveToFirst()) {
         while (!cursor.isAfterLast()) {
-          result.add(mTable.cursorToItem(cursor, null));
+          result.add(mTable.cursorToItem(cursor, indexes, null));
 
           if (stopOnMaxResults) {
             if (++cnt == maxResults)
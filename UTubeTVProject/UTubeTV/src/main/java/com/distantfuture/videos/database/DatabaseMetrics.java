@@ -0,0 +1,93 @@
+package com.distantfuture.videos.database;
+
+import com.distantfuture.videos.misc.DUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// how long grid reads take to get their first window of rows, split by whether a write transaction was open
+// at the time.  With WAL the contended numbers should look like the uncontended ones, process lifetime only
+public class DatabaseMetrics {
+  // upper bounds of the wait buckets in milliseconds, the last bucket catches everything slower
+  private static final long[] WAIT_BUCKETS = {4, 16, 50, 100, 250, 1000};
+  private static final AtomicInteger sWritersActive = new AtomicInteger();
+  private static final ReadStats sUncontended = new ReadStats();
+  private static final ReadStats sContended = new ReadStats();
+
+  public static void writeStarted() {
+    sWritersActive.incrementAndGet();
+  }
+
+  public static void writeEnded() {
+    sWritersActive.decrementAndGet();
+  }
+
+  public static boolean writerActive() {
+    return sWritersActive.get() > 0;
+  }
+
+  // contended is whether a writer was active when the read started or finished
+  public static void recordRead(long waitMillis, boolean contended) {
+    ReadStats stats = contended ? sContended : sUncontended;
+
+    synchronized (stats) {
+      stats.add(waitMillis);
+    }
+  }
+
+  public static String summary() {
+    StringBuilder result = new StringBuilder();
+
+    synchronized (sUncontended) {
+      result.append("reads: ").append(sUncontended.toString()).append("\n");
+    }
+    synchronized (sContended) {
+      result.append("reads during writes: ").append(sContended.toString()).append("\n");
+    }
+
+    return result.toString();
+  }
+
+  public static void dump() {
+    DUtils.log("Database metrics:\n" + summary());
+  }
+
+  private static class ReadStats {
+    private final int[] mHistogram = new int[WAIT_BUCKETS.length + 1];
+    private int mReads;
+    private long mTotalWait;
+    private long mMaxWait;
+
+    public void add(long waitMillis) {
+      mReads++;
+      mTotalWait += waitMillis;
+      mMaxWait = Math.max(mMaxWait, waitMillis);
+
+      int bucket = 0;
+      while (bucket < WAIT_BUCKETS.length && waitMillis > WAIT_BUCKETS[bucket])
+        bucket++;
+
+      mHistogram[bucket]++;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder();
+
+      result.append(String.format("reads %d, avg %dms, max %dms [", mReads, mReads > 0 ? mTotalWait / mReads : 0, mMaxWait));
+
+      for (int i = 0; i < mHistogram.length; i++) {
+        if (i > 0)
+          result.append(", ");
+
+        if (i < WAIT_BUCKETS.length)
+          result.append("<=").append(WAIT_BUCKETS[i]);
+        else
+          result.append(">").append(WAIT_BUCKETS[WAIT_BUCKETS.length - 1]);
+
+        result.append(": ").append(mHistogram[i]);
+      }
+
+      return result.append("]").toString();
+    }
+  }
+}
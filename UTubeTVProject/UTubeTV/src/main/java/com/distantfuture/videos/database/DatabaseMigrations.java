@@ -0,0 +1,227 @@
+package com.distantfuture.videos.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.distantfuture.videos.misc.DUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// upgrades the schema in place one version at a time so cached content and hidden flags survive app updates.
+// To change the schema, bump Database.DATABASE_VERSION and add a Migration from the old version here.
+// Each step's SQL is written out as it was at that version, never built from the live table classes, so a later
+// schema change can't change what an old step does
+public class DatabaseMigrations {
+  // the oldest version we can upgrade from, anything older is dropped and recreated
+  public static final int OLDEST_MIGRATABLE_VERSION = 5011;
+
+  // the tables with a request, a content id and a hidden flag, as named in every version so far
+  private static final String[][] CONTENT_TABLES = {{"videos", "video"}, {"playlists", "playlist"}};
+
+  private static List<Migration> migrations() {
+    List<Migration> result = new ArrayList<Migration>();
+
+    // paging checkpoints table
+    result.add(new Migration(5011) {
+      @Override
+      public void migrate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE checkpoints (_id INTEGER PRIMARY KEY,request TEXT UNIQUE,next_token TEXT,fetched_ids TEXT,updated INTEGER )");
+      }
+    });
+
+    // full descriptions moved to a side table, the grid tables keep a 300 character preview
+    result.add(new Migration(5012) {
+      @Override
+      public void migrate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE descriptions (content TEXT PRIMARY KEY,description TEXT )");
+
+        for (String[] table : CONTENT_TABLES)
+          moveLongDescriptions(db, table[0], table[1], 300);
+      }
+    });
+
+    // request/hidden/published_date indexes
+    result.add(new Migration(5013) {
+      @Override
+      public void migrate(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS video_idx on videos(video)");
+
+        for (String[] table : CONTENT_TABLES) {
+          db.execSQL("CREATE INDEX IF NOT EXISTS " + table[0] + "_request_hidden_date_idx on " + table[0] + "(request,hidden,published_date)");
+          db.execSQL("CREATE INDEX IF NOT EXISTS " + table[0] + "_request_date_idx on " + table[0] + "(request,published_date)");
+        }
+      }
+    });
+
+    // external content full text search tables for the grid filter, indexed from the rows already there.
+    // Replaced in 5019
+    result.add(new Migration(5014) {
+      @Override
+      public void migrate(SQLiteDatabase db) {
+        for (String[] table : CONTENT_TABLES) {
+          String fts = table[0] + "_fts";
+          String delete = "DELETE FROM " + fts + " WHERE docid = old._id; END";
+          String insert = "INSERT INTO " + fts + "(docid, title,description) VALUES(new._id, new.title, new.description); END";
+
+          db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + fts + " USING fts4(content=\"" + table[0] + "\", title,description)");
+          db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_bu BEFORE UPDATE OF title,description ON " + table[0] + " BEGIN " + delete);
+          db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_bd BEFORE DELETE ON " + table[0] + " BEGIN " + delete);
+          db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_au AFTER UPDATE OF title,description ON " + table[0] + " BEGIN " + insert);
+          db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_ai AFTER INSERT ON " + table[0] + " BEGIN " + insert);
+          db.execSQL("INSERT INTO " + fts + "(" + fts + ") VALUES('rebuild')");
+        }
+      }
+    });
+
+    // one row per (request, video/playlist id) so writes can upsert
+    result.add(new Migration(5015) {
+      @Override
+      public void migrate(SQLiteDatabase db) {
+        for (String[] table : CONTENT_TABLES) {
+          removeDuplicates(db, table[0], table[1]);
+
+          db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + table[0] + "_natural_key_idx on " + table[0] + "(request," + table[1] + ")");
+        }
+      }
+    });
+
+    // thumbnail URLs stored as a template code and the video id, the 5016 templates of ThumbnailCodec
+    result.add(new Migration(5016) {
+      @Override
+      public void migrate(SQLiteDatabase db) {
+        String[] prefixes = {"https://i.ytimg.com/vi/", "http://i.ytimg.com/vi/"};
+        String[] suffixes = {"/default.jpg", "/mqdefault.jpg", "/hqdefault.jpg", "/sddefault.jpg", "/maxresdefault.jpg"};
+
+        for (String[] table : CONTENT_TABLES) {
+          for (int p = 0; p < prefixes.length; p++) {
+            for (int s = 0; s < suffixes.length; s++) {
+              char code = (char) ('a' + p * suffixes.length + s);
+              int prefixLength = prefixes[p].length();
+
+              // GLOB since LIKE ignores case and the URL has to come back exactly as it was
+              db.execSQL("UPDATE " + table[0] + " SET thumbnail = '#" + code + "' || substr(thumbnail, " + (prefixLength + 1) + ", length(thumbnail) - " + (prefixLength + suffixes[s]
+                  .length()) + ") WHERE thumbnail GLOB '" + prefixes[p] + "*" + suffixes[s] + "'");
+            }
+          }
+        }
+      }
+    });
+
+    // last access per cached list for eviction, lists already cached count as used now
+    result.add(new Migration(5017) {
+      @Override
+      public void migrate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE request_info (_id INTEGER PRIMARY KEY,request TEXT UNIQUE,type TEXT,channel TEXT,last_access INTEGER )");
+
+        for (String[] table : CONTENT_TABLES)
+          db.execSQL("INSERT OR IGNORE INTO request_info (request, last_access) SELECT DISTINCT request, " + System.currentTimeMillis() + " FROM " + table[0] + " WHERE request IS NOT NULL");
+      }
+    });
+
+    // fetch time and etag per list
+    result.add(new Migration(5018) {
+      @Override
+      public void migrate(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE request_info ADD COLUMN last_fetch INTEGER");
+        db.execSQL("ALTER TABLE request_info ADD COLUMN etag TEXT");
+      }
+    });
+
+    // full text index over the full descriptions rather than the preview, no longer external content
+    result.add(new Migration(5019) {
+      @Override
+      public void migrate(SQLiteDatabase db) {
+        for (String[] table : CONTENT_TABLES) {
+          String fts = table[0] + "_fts";
+          String delete = "DELETE FROM " + fts + " WHERE docid = old._id;";
+          String insert = "INSERT INTO " + fts + "(docid, title,description) VALUES(new._id, new.title, COALESCE((SELECT description FROM descriptions WHERE content = new." + table[1] + "), new.description));";
+
+          for (String trigger : new String[]{"_bu", "_bd", "_au", "_ai"})
+            db.execSQL("DROP TRIGGER IF EXISTS " + fts + trigger);
+          db.execSQL("DROP TABLE IF EXISTS " + fts);
+
+          db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + fts + " USING fts4(title,description)");
+          db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_ad AFTER DELETE ON " + table[0] + " BEGIN " + delete + " END");
+          db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_au AFTER UPDATE OF title,description ON " + table[0] + " BEGIN " + delete + " " + insert + " END");
+          db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_ai AFTER INSERT ON " + table[0] + " BEGIN " + insert + " END");
+
+          db.execSQL("INSERT INTO " + fts + "(docid, title,description) SELECT _id, title, COALESCE((SELECT description FROM descriptions WHERE content = " + table[0] + "." + table[1] + "), description) FROM " + table[0]);
+        }
+      }
+    });
+
+    // full text update trigger only fires when the title or description changed
+    result.add(new Migration(5020) {
+      @Override
+      public void migrate(SQLiteDatabase db) {
+        for (String[] table : CONTENT_TABLES) {
+          String fts = table[0] + "_fts";
+          String delete = "DELETE FROM " + fts + " WHERE docid = old._id;";
+          String insert = "INSERT INTO " + fts + "(docid, title,description) VALUES(new._id, new.title, COALESCE((SELECT description FROM descriptions WHERE content = new." + table[1] + "), new.description));";
+
+          db.execSQL("DROP TRIGGER IF EXISTS " + fts + "_au");
+          db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_au AFTER UPDATE OF title,description ON " + table[0] + " WHEN old.title IS NOT new.title OR old.description IS NOT new.description BEGIN " + delete + " " + insert + " END");
+        }
+      }
+    });
+
+    return result;
+  }
+
+  // returns false if there's no path from oldVersion to newVersion, caller should start over.  A step that fails
+  // throws, onUpgrade's transaction is rolled back and the database stays at oldVersion
+  public static boolean migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+    if (oldVersion < OLDEST_MIGRATABLE_VERSION || oldVersion >= newVersion)
+      return false;
+
+    List<Migration> migrations = migrations();
+
+    // check the whole path first, so we never stop half way and start over
+    for (int version = oldVersion; version < newVersion; version++) {
+      if (migrationFrom(migrations, version) == null) {
+        DUtils.log("no migration from database version " + version);
+        return false;
+      }
+    }
+
+    for (int version = oldVersion; version < newVersion; version++) {
+      DUtils.log("migrating database from version " + version);
+      migrationFrom(migrations, version).migrate(db);
+    }
+
+    return true;
+  }
+
+  private static Migration migrationFrom(List<Migration> migrations, int version) {
+    for (Migration migration : migrations) {
+      if (migration.mFromVersion == version)
+        return migration;
+    }
+
+    return null;
+  }
+
+  private static void moveLongDescriptions(SQLiteDatabase db, String tableName, String contentCol, int previewLength) {
+    db.execSQL("INSERT OR REPLACE INTO descriptions SELECT " + contentCol + ", description FROM " + tableName + " WHERE " + contentCol + " IS NOT NULL AND length(description) > " + previewLength);
+    db.execSQL("UPDATE " + tableName + " SET description = substr(description, 1, " + previewLength + ") WHERE length(description) > " + previewLength);
+  }
+
+  // keeps the oldest row of each duplicate, hidden if any of the copies were hidden
+  private static void removeDuplicates(SQLiteDatabase db, String tableName, String contentCol) {
+    db.execSQL("UPDATE " + tableName + " SET hidden = '' WHERE hidden IS NULL AND EXISTS (SELECT 1 FROM " + tableName + " AS dup WHERE dup.request = " + tableName + ".request AND dup." + contentCol + " = " + tableName + "." + contentCol + " AND dup.hidden IS NOT NULL)");
+    db.execSQL("DELETE FROM " + tableName + " WHERE " + contentCol + " IS NOT NULL AND _id NOT IN (SELECT MIN(_id) FROM " + tableName + " WHERE " + contentCol + " IS NOT NULL GROUP BY request, " + contentCol + ")");
+  }
+
+  // moves the schema from mFromVersion to mFromVersion + 1
+  private static abstract class Migration {
+    private final int mFromVersion;
+
+    public Migration(int fromVersion) {
+      super();
+
+      mFromVersion = fromVersion;
+    }
+
+    public abstract void migrate(SQLiteDatabase db);
+  }
+}
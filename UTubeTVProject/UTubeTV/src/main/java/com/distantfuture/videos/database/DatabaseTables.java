@@ -1,8 +1,14 @@
 package com.distantfuture.videos.database;
 
-import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+import com.distantfuture.videos.misc.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class DatabaseTables {
   // filter flags
@@ -16,26 +22,30 @@ public class DatabaseTables {
   private static final String INT_TYPE = " INTEGER";
   private static final String PRIMARY = " PRIMARY KEY";
   private static final String COMMA_SEP = ",";
+  private static final String CREATE_INDEX = "CREATE INDEX IF NOT EXISTS ";
+  private static final String CREATE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS ";
+  private static final int ROW_OVERHEAD_BYTES = 64;  // ids, numbers, index entries
 
+  // reached from the service's workers, the info fetchers and the provider at once, the accessors are synchronized
   private static VideoTable mVideoTable = null;
   private static PlaylistTable mPlaylistTable = null;
   private static ChannelTable mChannelTable = null;
 
-  public static VideoTable videoTable() {
+  public static synchronized VideoTable videoTable() {
     if (mVideoTable == null)
       mVideoTable = new VideoTable();
 
     return mVideoTable;
   }
 
-  public static PlaylistTable playlistTable() {
+  public static synchronized PlaylistTable playlistTable() {
     if (mPlaylistTable == null)
       mPlaylistTable = new PlaylistTable();
 
     return mPlaylistTable;
   }
 
-  public static ChannelTable channelTable() {
+  public static synchronized ChannelTable channelTable() {
     if (mChannelTable == null)
       mChannelTable = new ChannelTable();
 
@@ -68,32 +78,128 @@ public class DatabaseTables {
         break;
     }
 
-    if (filter != null) {
+    List<String> args = new ArrayList<String>();
+    String orderBy = table.orderBy();
+
+    String match = fullTextQuery(filter);
+    if (match != null) {
+      String ftsTable = fullTextTableName(table.tableName());
+
       if (selection == null)
         selection = "";
       else
         selection += " AND ";
 
-      // single quotes must be doubled up
-      filter = filter.replace("'", "''");
-
-      selection += "(" + TITLE_COL + " LIKE '%" + filter + "%'";
-      selection += " OR " + DESC_COL + " LIKE '%" + filter + "%'" + ")";
+      selection += ID_COL + " IN (SELECT docid FROM " + ftsTable + " WHERE " + ftsTable + " MATCH ?)";
+      args.add(match);
     }
 
     if (requestId != null) {
-      selectionArgs = new String[]{requestId};
-
       if (selection == null)
         selection = "";
       else
         selection += " AND ";
 
       selection += REQUEST_COL + " = ?";
+      args.add(requestId);
+    }
+
+    // title matches first, the ? binds after the selection's
+    if (match != null) {
+      orderBy = "(" + ID_COL + " IN (SELECT docid FROM " + fullTextTableName(table.tableName()) + " WHERE " + TITLE_COL + " MATCH ?)) DESC, " + orderBy;
+      args.add(match);
+    }
+
+    if (args.size() > 0)
+      selectionArgs = args.toArray(new String[args.size()]);
+
+    return new Database.DatabaseQuery(table.tableName(), selection, selectionArgs, projection, orderBy);
+  }
+
+  public static String fullTextTableName(String tableName) {
+    return tableName + "_fts";
+  }
+
+  // turns what was typed in the search box into an FTS prefix query, each word quoted so AND, OR, NOT or
+  // punctuation can't be read as query syntax. Splits on the same characters as the simple tokenizer.
+  // returns null if there's nothing to search for
+  public static String fullTextQuery(String filter) {
+    if (filter == null)
+      return null;
+
+    StringBuilder result = new StringBuilder();
+    int wordStart = -1;
+
+    for (int i = 0; i <= filter.length(); i++) {
+      boolean wordChar = i < filter.length() && Character.isLetterOrDigit(filter.charAt(i));
+
+      if (wordChar) {
+        if (wordStart == -1)
+          wordStart = i;
+      } else if (wordStart != -1) {
+        if (result.length() > 0)
+          result.append(' ');
+
+        result.append('"').append(filter, wordStart, i).append("*\"");
+        wordStart = -1;
+      }
     }
 
-    return new Database.DatabaseQuery(table.tableName(), selection, selectionArgs, projection, table
-        .orderBy());
+    return result.length() > 0 ? result.toString() : null;
+  }
+
+  // FTS4 table over title and the full description, docid is the row's _id.  It keeps its own copy of the text,
+  // an external content table would index the row's description which is only the preview, and deleting from
+  // an external content index needs the exact text that was indexed.  The full description is looked up in
+  // FullDescriptions, so DatabaseAccess saves those before writing the rows.  Upserts write every column, the update
+  // trigger only reindexes when the text actually changed
+  private static String[] fullTextSQL(String tableName, String idCol, String contentCol, String titleCol, String descCol) {
+    String fts = fullTextTableName(tableName);
+    String columns = titleCol + COMMA_SEP + descCol;
+    String insert = "INSERT INTO " + fts + "(docid, " + columns + ") VALUES(new." + idCol + ", new." + titleCol + ", COALESCE(" + FullDescriptions
+        .descriptionSQL("new." + contentCol) + ", new." + descCol + "));";
+    String delete = "DELETE FROM " + fts + " WHERE docid = old." + idCol + ";";
+
+    return new String[]{"CREATE VIRTUAL TABLE IF NOT EXISTS " + fts + " USING fts4(" + columns + ")", CREATE_TRIGGER + fts + "_ad AFTER DELETE ON " + tableName + " BEGIN " + delete + " END", CREATE_TRIGGER + fts + "_au AFTER UPDATE OF " + columns + " ON " + tableName + " WHEN old." + titleCol + " IS NOT new." + titleCol + " OR old." + descCol + " IS NOT new." + descCol + " BEGIN " + delete + " " + insert + " END", CREATE_TRIGGER + fts + "_ai AFTER INSERT ON " + tableName + " BEGIN " + insert + " END"};
+  }
+
+  // rough bytes each request's rows take: the row, its full description, and the title and full description again
+  // in the full text index.  Counted from the rows since freeing some rows rarely frees whole database pages
+  public static String requestBytesSQL(String tableName, String requestCol, String contentCol, String titleCol, String descCol, String thumbnailCol) {
+    String fullDescription = "IFNULL(length(" + FullDescriptions.descriptionSQL(tableName + "." + contentCol) + "), 0)";
+    String rowBytes = ROW_OVERHEAD_BYTES + " + IFNULL(length(" + requestCol + "), 0) + IFNULL(length(" + contentCol + "), 0) + IFNULL(length(" + thumbnailCol + "), 0) + IFNULL(length(" + descCol + "), 0) + 2 * IFNULL(length(" + titleCol + "), 0) + 2 * " + fullDescription;
+
+    return "SELECT " + requestCol + ", SUM(" + rowBytes + ") FROM " + tableName + " GROUP BY " + requestCol;
+  }
+
+  // the grid queries are "request = ? AND hidden IS NULL ORDER BY published_date DESC" or the same without the
+  // hidden test.  SQLite treats IS NULL like an equality, so these let it find the rows and walk them already
+  // sorted instead of scanning the table and sorting in a temp b-tree
+  private static String[] requestIndexesSQL(String tableName, String requestCol, String hiddenCol, String dateCol) {
+    String visible = CREATE_INDEX + tableName + "_request_hidden_date_idx on " + tableName + "(" + requestCol + COMMA_SEP + hiddenCol + COMMA_SEP + dateCol + ")";
+    String all = CREATE_INDEX + tableName + "_request_date_idx on " + tableName + "(" + requestCol + COMMA_SEP + dateCol + ")";
+
+    return new String[]{visible, all};
+  }
+
+  // unique index on the natural key so a video or playlist is only in a request once.  Not part of indexSQL(),
+  // databases from before it was added need the duplicates removed first. null if the table has no natural key
+  public static String naturalKeyIndexSQL(DatabaseTable table) {
+    String[] keyColumns = table.naturalKeyColumns();
+
+    if (keyColumns.length == 0)
+      return null;
+
+    return "CREATE UNIQUE INDEX IF NOT EXISTS " + table.tableName() + "_natural_key_idx on " + table.tableName() + "(" + TextUtils
+        .join(COMMA_SEP, keyColumns) + ")";
+  }
+
+  // bindString() throws on null
+  private static void bindString(SQLiteStatement statement, int index, String value) {
+    if (value == null)
+      statement.bindNull(index);
+    else
+      statement.bindString(index, value);
   }
 
   // =====================================================================
@@ -102,13 +208,31 @@ public class DatabaseTables {
   public static interface DatabaseTable {
     public String tableName();
 
+    // looks up the column indexes, cached for the last cursor passed in
     public YouTubeData cursorToItem(Cursor cursor, YouTubeData reuseData);
 
-    public ContentValues contentValuesForItem(YouTubeData item);
+    // use this when binding lots of rows, compute the indexes once per cursor
+    public YouTubeData cursorToItem(Cursor cursor, ColumnIndexes indexes, YouTubeData reuseData);
+
+    // the columns bindItem() writes, in bind order
+    public String[] contentColumns();
+
+    // binds the item to parameters 1 to contentColumns().length
+    public void bindItem(SQLiteStatement statement, YouTubeData item);
+
+    // columns that identify a row, (request, video id) for example.  Can be empty, never null
+    public String[] naturalKeyColumns();
 
     public String tableSQL();
 
-    public String indexSQL();
+    // can be empty, never null
+    public String[] indexSQL();
+
+    // the full text index and its triggers, can be empty, never null
+    public String[] fullTextSQL();
+
+    // request and estimated bytes of its rows, null if the table isn't per request
+    public String requestBytesSQL();
 
     public Database.DatabaseQuery queryParams(int queryID, String requestId, String filter);
 
@@ -123,12 +247,13 @@ public class DatabaseTables {
 
   public static class ChannelTable implements DatabaseTable {
     private static ChannelTable singleton = null;
+    private final ColumnIndexes.Cache mIndexCache = new ColumnIndexes.Cache();
 
     private ChannelTable() {
       super();
     }
 
-    public static ChannelTable instance() {
+    public static synchronized ChannelTable instance() {
       if (singleton == null)
         singleton = new ChannelTable();
 
@@ -142,29 +267,49 @@ public class DatabaseTables {
 
     @Override
     public YouTubeData cursorToItem(Cursor cursor, YouTubeData reuseData) {
+      return cursorToItem(cursor, mIndexCache.indexesFor(cursor), reuseData);
+    }
+
+    @Override
+    public YouTubeData cursorToItem(Cursor cursor, ColumnIndexes indexes, YouTubeData reuseData) {
       YouTubeData result = reuseData;  // avoiding memory alloc during draw
       if (result == null)
         result = new YouTubeData();
 
-      result.mID = cursor.getLong(cursor.getColumnIndex(Entry._ID));
-      result.mTitle = cursor.getString(cursor.getColumnIndex(Entry.COLUMN_NAME_TITLE));
-      result.mChannel = cursor.getString(cursor.getColumnIndex(Entry.COLUMN_NAME_CHANNEL));
-      result.mDescription = cursor.getString(cursor.getColumnIndex(Entry.COLUMN_NAME_DESCRIPTION));
-      result.mThumbnail = cursor.getString(cursor.getColumnIndex(Entry.COLUMN_NAME_THUMBNAIL));
+      if (indexes.id != -1)
+        result.mID = cursor.getLong(indexes.id);
+
+      if (indexes.title != -1)
+        result.mTitle = cursor.getString(indexes.title);
+
+      if (indexes.channel != -1)
+        result.mChannel = cursor.getString(indexes.channel);
+
+      if (indexes.description != -1)
+        result.mDescription = cursor.getString(indexes.description);
+
+      if (indexes.thumbnail != -1)
+        result.mThumbnail = cursor.getString(indexes.thumbnail);
 
       return result;
     }
 
     @Override
-    public ContentValues contentValuesForItem(YouTubeData item) {
-      ContentValues values = new ContentValues();
+    public String[] contentColumns() {
+      return new String[]{Entry.COLUMN_NAME_TITLE, Entry.COLUMN_NAME_DESCRIPTION, Entry.COLUMN_NAME_THUMBNAIL, Entry.COLUMN_NAME_CHANNEL};
+    }
 
-      values.put(Entry.COLUMN_NAME_TITLE, item.mTitle);
-      values.put(Entry.COLUMN_NAME_DESCRIPTION, item.mDescription);
-      values.put(Entry.COLUMN_NAME_THUMBNAIL, item.mThumbnail);
-      values.put(Entry.COLUMN_NAME_CHANNEL, item.mChannel);
+    @Override
+    public void bindItem(SQLiteStatement statement, YouTubeData item) {
+      bindString(statement, 1, item.mTitle);
+      bindString(statement, 2, item.mDescription);
+      bindString(statement, 3, item.mThumbnail);
+      bindString(statement, 4, item.mChannel);
+    }
 
-      return values;
+    @Override
+    public String[] naturalKeyColumns() {
+      return new String[]{};
     }
 
     @Override
@@ -173,7 +318,17 @@ public class DatabaseTables {
     }
 
     @Override
-    public String indexSQL() {
+    public String[] indexSQL() {
+      return new String[]{};
+    }
+
+    @Override
+    public String[] fullTextSQL() {
+      return new String[]{};
+    }
+
+    @Override
+    public String requestBytesSQL() {
       return null;
     }
 
@@ -222,12 +377,13 @@ public class DatabaseTables {
 
   public static class PlaylistTable implements DatabaseTable {
     private static PlaylistTable singleton = null;
+    private final ColumnIndexes.Cache mIndexCache = new ColumnIndexes.Cache();
 
     private PlaylistTable() {
       super();
     }
 
-    public static PlaylistTable instance() {
+    public static synchronized PlaylistTable instance() {
       if (singleton == null)
         singleton = new PlaylistTable();
 
@@ -241,65 +397,65 @@ public class DatabaseTables {
 
     @Override
     public YouTubeData cursorToItem(Cursor cursor, YouTubeData reuseData) {
+      return cursorToItem(cursor, mIndexCache.indexesFor(cursor), reuseData);
+    }
+
+    @Override
+    public YouTubeData cursorToItem(Cursor cursor, ColumnIndexes indexes, YouTubeData reuseData) {
       YouTubeData result = reuseData;  // avoiding memory alloc during draw
       if (result == null)
         result = new YouTubeData();
 
-      int col;
+      if (indexes.id != -1)
+        result.mID = cursor.getLong(indexes.id);
 
-      col = cursor.getColumnIndex(Entry._ID);
-      if (col != -1)
-        result.mID = cursor.getLong(cursor.getColumnIndex(Entry._ID));
+      if (indexes.request != -1)
+        result.mRequest = cursor.getString(indexes.request);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_REQUEST);
-      if (col != -1)
-        result.mRequest = cursor.getString(cursor.getColumnIndex(Entry.COLUMN_NAME_REQUEST));
+      if (indexes.playlist != -1)
+        result.mPlaylist = cursor.getString(indexes.playlist);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_PLAYLIST);
-      if (col != -1)
-        result.mPlaylist = cursor.getString(cursor.getColumnIndex(Entry.COLUMN_NAME_PLAYLIST));
+      if (indexes.title != -1)
+        result.mTitle = cursor.getString(indexes.title);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_TITLE);
-      if (col != -1)
-        result.mTitle = cursor.getString(cursor.getColumnIndex(Entry.COLUMN_NAME_TITLE));
+      if (indexes.description != -1)
+        result.mDescription = cursor.getString(indexes.description);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_DESCRIPTION);
-      if (col != -1)
-        result.mDescription = cursor.getString(cursor.getColumnIndex(Entry.COLUMN_NAME_DESCRIPTION));
+      if (indexes.thumbnail != -1)
+        result.mThumbnail = ThumbnailCodec.decode(cursor.getString(indexes.thumbnail));
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_THUMBNAIL);
-      if (col != -1)
-        result.mThumbnail = cursor.getString(cursor.getColumnIndex(Entry.COLUMN_NAME_THUMBNAIL));
+      if (indexes.itemCount != -1)
+        result.mItemCount = cursor.getLong(indexes.itemCount);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_ITEM_COUNT);
-      if (col != -1)
-        result.mItemCount = cursor.getLong(cursor.getColumnIndex(Entry.COLUMN_NAME_ITEM_COUNT));
+      if (indexes.publishedDate != -1)
+        result.mPublishedDate = cursor.getLong(indexes.publishedDate);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_PUBLISHED_DATE);
-      if (col != -1)
-        result.mPublishedDate = cursor.getLong(cursor.getColumnIndex(Entry.COLUMN_NAME_PUBLISHED_DATE));
-
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_HIDDEN);
-      if (col != -1)
-        result.setHidden(cursor.getString(col) != null);
+      if (indexes.hidden != -1)
+        result.setHidden(cursor.getString(indexes.hidden) != null);
 
       return result;
     }
 
     @Override
-    public ContentValues contentValuesForItem(YouTubeData item) {
-      ContentValues values = new ContentValues();
+    public String[] contentColumns() {
+      return new String[]{Entry.COLUMN_NAME_REQUEST, Entry.COLUMN_NAME_PLAYLIST, Entry.COLUMN_NAME_TITLE, Entry.COLUMN_NAME_DESCRIPTION, Entry.COLUMN_NAME_THUMBNAIL, Entry.COLUMN_NAME_ITEM_COUNT, Entry.COLUMN_NAME_PUBLISHED_DATE, Entry.COLUMN_NAME_HIDDEN};
+    }
 
-      values.put(Entry.COLUMN_NAME_REQUEST, item.mRequest);
-      values.put(Entry.COLUMN_NAME_PLAYLIST, item.mPlaylist);
-      values.put(Entry.COLUMN_NAME_TITLE, item.mTitle);
-      values.put(Entry.COLUMN_NAME_DESCRIPTION, item.mDescription);
-      values.put(Entry.COLUMN_NAME_THUMBNAIL, item.mThumbnail);
-      values.put(Entry.COLUMN_NAME_ITEM_COUNT, item.mItemCount);
-      values.put(Entry.COLUMN_NAME_PUBLISHED_DATE, item.mPublishedDate);
-      values.put(Entry.COLUMN_NAME_HIDDEN, item.isHidden() ? "" : null);
+    @Override
+    public void bindItem(SQLiteStatement statement, YouTubeData item) {
+      bindString(statement, 1, item.mRequest);
+      bindString(statement, 2, item.mPlaylist);
+      bindString(statement, 3, item.mTitle);
+      bindString(statement, 4, Utils.condenseWhiteSpace(item.mDescription, FullDescriptions.PREVIEW_LENGTH));  // full text goes in FullDescriptions
+      bindString(statement, 5, ThumbnailCodec.encode(item.mThumbnail));
+      statement.bindLong(6, item.mItemCount);
+      statement.bindLong(7, item.mPublishedDate);
+      bindString(statement, 8, item.isHidden() ? "" : null);
+    }
 
-      return values;
+    @Override
+    public String[] naturalKeyColumns() {
+      return new String[]{Entry.COLUMN_NAME_REQUEST, Entry.COLUMN_NAME_PLAYLIST};
     }
 
     @Override
@@ -309,8 +465,18 @@ public class DatabaseTables {
     }
 
     @Override
-    public String indexSQL() {
-      return null;
+    public String[] indexSQL() {
+      return requestIndexesSQL(tableName(), Entry.COLUMN_NAME_REQUEST, Entry.COLUMN_NAME_HIDDEN, Entry.COLUMN_NAME_PUBLISHED_DATE);
+    }
+
+    @Override
+    public String[] fullTextSQL() {
+      return DatabaseTables.fullTextSQL(tableName(), Entry._ID, naturalKeyColumns()[1], Entry.COLUMN_NAME_TITLE, Entry.COLUMN_NAME_DESCRIPTION);
+    }
+
+    @Override
+    public String requestBytesSQL() {
+      return DatabaseTables.requestBytesSQL(tableName(), Entry.COLUMN_NAME_REQUEST, naturalKeyColumns()[1], Entry.COLUMN_NAME_TITLE, Entry.COLUMN_NAME_DESCRIPTION, Entry.COLUMN_NAME_THUMBNAIL);
     }
 
     @Override
@@ -345,6 +511,8 @@ public class DatabaseTables {
   }
 
   public static class VideoTable implements DatabaseTable {
+    private final ColumnIndexes.Cache mIndexCache = new ColumnIndexes.Cache();
+
     private VideoTable() {
       super();
     }
@@ -356,72 +524,82 @@ public class DatabaseTables {
 
     @Override
     public YouTubeData cursorToItem(Cursor cursor, YouTubeData reuseData) {
+      return cursorToItem(cursor, mIndexCache.indexesFor(cursor), reuseData);
+    }
+
+    @Override
+    public YouTubeData cursorToItem(Cursor cursor, ColumnIndexes indexes, YouTubeData reuseData) {
       YouTubeData result = reuseData;  // avoiding memory alloc during draw
       if (result == null)
         result = new YouTubeData();
 
-      int col;
+      if (indexes.id != -1)
+        result.mID = cursor.getLong(indexes.id);
 
-      col = cursor.getColumnIndex(Entry._ID);
-      if (col != -1)
-        result.mID = cursor.getLong(col);
+      if (indexes.request != -1)
+        result.mRequest = cursor.getString(indexes.request);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_REQUEST);
-      if (col != -1)
-        result.mRequest = cursor.getString(col);
+      if (indexes.video != -1)
+        result.mVideo = cursor.getString(indexes.video);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_VIDEO);
-      if (col != -1)
-        result.mVideo = cursor.getString(col);
+      if (indexes.title != -1)
+        result.mTitle = cursor.getString(indexes.title);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_TITLE);
-      if (col != -1)
-        result.mTitle = cursor.getString(col);
+      if (indexes.description != -1)
+        result.mDescription = cursor.getString(indexes.description);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_DESCRIPTION);
-      if (col != -1)
-        result.mDescription = cursor.getString(col);
+      if (indexes.thumbnail != -1)
+        result.mThumbnail = ThumbnailCodec.decode(cursor.getString(indexes.thumbnail));
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_THUMBNAIL);
-      if (col != -1)
-        result.mThumbnail = cursor.getString(col);
+      if (indexes.duration != -1)
+        result.mDuration = cursor.getString(indexes.duration);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_DURATION);
-      if (col != -1)
-        result.mDuration = cursor.getString(col);
+      if (indexes.publishedDate != -1)
+        result.mPublishedDate = cursor.getLong(indexes.publishedDate);
 
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_PUBLISHED_DATE);
-      if (col != -1)
-        result.mPublishedDate = cursor.getLong(col);
-
-      col = cursor.getColumnIndex(Entry.COLUMN_NAME_HIDDEN);
-      if (col != -1)
-        result.setHidden(cursor.getString(col) != null);
+      if (indexes.hidden != -1)
+        result.setHidden(cursor.getString(indexes.hidden) != null);
 
       return result;
     }
 
     @Override
-    public ContentValues contentValuesForItem(YouTubeData item) {
-      ContentValues values = new ContentValues();
+    public String[] contentColumns() {
+      return new String[]{Entry.COLUMN_NAME_VIDEO, Entry.COLUMN_NAME_REQUEST, Entry.COLUMN_NAME_TITLE, Entry.COLUMN_NAME_DESCRIPTION, Entry.COLUMN_NAME_THUMBNAIL, Entry.COLUMN_NAME_DURATION, Entry.COLUMN_NAME_PUBLISHED_DATE, Entry.COLUMN_NAME_HIDDEN};
+    }
 
-      values.put(Entry.COLUMN_NAME_VIDEO, item.mVideo);
-      values.put(Entry.COLUMN_NAME_REQUEST, item.mRequest);
-      values.put(Entry.COLUMN_NAME_TITLE, item.mTitle);
-      values.put(Entry.COLUMN_NAME_DESCRIPTION, item.mDescription);
-      values.put(Entry.COLUMN_NAME_THUMBNAIL, item.mThumbnail);
-      values.put(Entry.COLUMN_NAME_DURATION, item.mDuration);
-      values.put(Entry.COLUMN_NAME_PUBLISHED_DATE, item.mPublishedDate);
-      values.put(Entry.COLUMN_NAME_HIDDEN, item.isHidden() ? "" : null);
+    @Override
+    public void bindItem(SQLiteStatement statement, YouTubeData item) {
+      bindString(statement, 1, item.mVideo);
+      bindString(statement, 2, item.mRequest);
+      bindString(statement, 3, item.mTitle);
+      bindString(statement, 4, Utils.condenseWhiteSpace(item.mDescription, FullDescriptions.PREVIEW_LENGTH));  // full text goes in FullDescriptions
+      bindString(statement, 5, ThumbnailCodec.encode(item.mThumbnail));
+      bindString(statement, 6, item.mDuration);
+      statement.bindLong(7, item.mPublishedDate);
+      bindString(statement, 8, item.isHidden() ? "" : null);
+    }
 
-      return values;
+    @Override
+    public String[] naturalKeyColumns() {
+      return new String[]{Entry.COLUMN_NAME_REQUEST, Entry.COLUMN_NAME_VIDEO};
     }
 
     @Override
-    public String indexSQL() {
-      String indexName = Entry.COLUMN_NAME_VIDEO + "_idx";
+    public String[] indexSQL() {
+      String[] requestIndexes = requestIndexesSQL(tableName(), Entry.COLUMN_NAME_REQUEST, Entry.COLUMN_NAME_HIDDEN, Entry.COLUMN_NAME_PUBLISHED_DATE);
 
-      return "CREATE INDEX " + indexName + " on " + tableName() + "(" + Entry.COLUMN_NAME_VIDEO + ")";
+      return new String[]{CREATE_INDEX + Entry.COLUMN_NAME_VIDEO + "_idx on " + tableName() + "(" + Entry.COLUMN_NAME_VIDEO + ")", requestIndexes[0], requestIndexes[1]};
+    }
+
+    @Override
+    public String[] fullTextSQL() {
+      return DatabaseTables.fullTextSQL(tableName(), Entry._ID, naturalKeyColumns()[1], Entry.COLUMN_NAME_TITLE, Entry.COLUMN_NAME_DESCRIPTION);
+    }
+
+    @Override
+    public String requestBytesSQL() {
+      return DatabaseTables.requestBytesSQL(tableName(), Entry.COLUMN_NAME_REQUEST, naturalKeyColumns()[1], Entry.COLUMN_NAME_TITLE, Entry.COLUMN_NAME_DESCRIPTION, Entry.COLUMN_NAME_THUMBNAIL);
     }
 
     @Override
@@ -0,0 +1,118 @@
+package com.distantfuture.videos.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.distantfuture.videos.misc.DUtils;
+
+import java.util.List;
+
+// the videos and playlists tables only keep a short preview of the description so grid cursors stay small.
+// The full text lives here keyed by video or playlist id, and only for descriptions longer than the preview
+public class FullDescriptions {
+  public static final int PREVIEW_LENGTH = 300;
+  private static final String COLUMN_NAME_CONTENT = "content";
+  private static final String COLUMN_NAME_DESCRIPTION = "description";
+  private Database mDB;
+
+  public FullDescriptions(Context context) {
+    super();
+
+    mDB = Database.instance(context);
+  }
+
+  public static String tableName() {
+    return "descriptions";
+  }
+
+  public static String tableSQL() {
+    return "CREATE TABLE " + tableName() + " (" + COLUMN_NAME_CONTENT + " TEXT PRIMARY KEY," + COLUMN_NAME_DESCRIPTION + " TEXT )";
+  }
+
+  // the full description for contentIdExpr, NULL if the preview is the whole thing.  Used by the full text index
+  public static String descriptionSQL(String contentIdExpr) {
+    return "(SELECT " + COLUMN_NAME_DESCRIPTION + " FROM " + tableName() + " WHERE " + COLUMN_NAME_CONTENT + " = " + contentIdExpr + ")";
+  }
+
+  // called inside the transaction that writes the items, before the rows so the full text index sees them.  Rows
+  // whose preview didn't change don't fire the index's update trigger, so a full description that changed past
+  // the preview is reindexed here
+  public static void save(SQLiteDatabase db, List<YouTubeData> items) {
+    SQLiteStatement update = db.compileStatement("UPDATE " + tableName() + " SET " + COLUMN_NAME_DESCRIPTION + " = ?1 WHERE " + COLUMN_NAME_CONTENT + " = ?2 AND " + COLUMN_NAME_DESCRIPTION + " IS NOT ?1");
+    SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO " + tableName() + " (" + COLUMN_NAME_DESCRIPTION + ", " + COLUMN_NAME_CONTENT + ") VALUES (?1, ?2)");
+    SQLiteStatement reindexVideos = db.compileStatement(reindexSQL(DatabaseTables.videoTable()));
+    SQLiteStatement reindexPlaylists = db.compileStatement(reindexSQL(DatabaseTables.playlistTable()));
+
+    try {
+      for (YouTubeData item : items) {
+        String contentId = item.mVideo != null ? item.mVideo : item.mPlaylist;
+
+        if (contentId != null) {
+          if (item.mDescription != null && item.mDescription.length() > PREVIEW_LENGTH) {
+            update.bindString(1, item.mDescription);
+            update.bindString(2, contentId);
+
+            if (update.executeUpdateDelete() > 0) {
+              for (SQLiteStatement reindex : new SQLiteStatement[]{reindexVideos, reindexPlaylists}) {
+                reindex.bindString(1, item.mDescription);
+                reindex.bindString(2, contentId);
+                reindex.executeUpdateDelete();
+              }
+            } else {
+              // new, or already the same
+              insert.bindString(1, item.mDescription);
+              insert.bindString(2, contentId);
+              insert.executeInsert();
+            }
+          } else {
+            // could have been long last time
+            db.delete(tableName(), COLUMN_NAME_CONTENT + " = ?", new String[]{contentId});
+          }
+        }
+      }
+    } finally {
+      update.close();
+      insert.close();
+      reindexVideos.close();
+      reindexPlaylists.close();
+    }
+  }
+
+  private static String reindexSQL(DatabaseTables.DatabaseTable table) {
+    String contentCol = table.naturalKeyColumns()[1];
+
+    return "UPDATE " + DatabaseTables.fullTextTableName(table.tableName()) + " SET " + DatabaseTables.VideoTable.Entry.COLUMN_NAME_DESCRIPTION + " = ?1 WHERE docid IN (SELECT _id FROM " + table.tableName() + " WHERE " + contentCol + " = ?2)";
+  }
+
+  // drops descriptions no video or playlist row refers to anymore, called inside the transaction that deleted the rows
+  public static void removeOrphans(SQLiteDatabase db) {
+    String videos = DatabaseTables.videoTable().tableName();
+    String playlists = DatabaseTables.playlistTable().tableName();
+
+    db.execSQL("DELETE FROM " + tableName() + " WHERE " + COLUMN_NAME_CONTENT + " NOT IN (SELECT " + DatabaseTables.VideoTable.Entry.COLUMN_NAME_VIDEO + " FROM " + videos + " WHERE " + DatabaseTables.VideoTable.Entry.COLUMN_NAME_VIDEO + " IS NOT NULL) AND " + COLUMN_NAME_CONTENT + " NOT IN (SELECT " + DatabaseTables.PlaylistTable.Entry.COLUMN_NAME_PLAYLIST + " FROM " + playlists + " WHERE " + DatabaseTables.PlaylistTable.Entry.COLUMN_NAME_PLAYLIST + " IS NOT NULL)");
+  }
+
+  // returns null if the preview is already the whole description
+  public String get(String contentId) {
+    String result = null;
+    Cursor cursor = null;
+
+    try {
+      SQLiteDatabase db = mDB.getReadableDatabase();
+
+      cursor = db.query(tableName(), new String[]{COLUMN_NAME_DESCRIPTION}, COLUMN_NAME_CONTENT + " = ?", new String[]{contentId}, null, null, null);
+
+      if (cursor.moveToFirst())
+        result = cursor.getString(0);
+    } catch (Exception e) {
+      DUtils.log("FullDescriptions get exception: " + e.getMessage());
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+
+    return result;
+  }
+}
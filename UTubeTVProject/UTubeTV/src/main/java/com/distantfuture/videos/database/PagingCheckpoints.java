@@ -0,0 +1,121 @@
+package com.distantfuture.videos.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+import com.distantfuture.videos.misc.DUtils;
+
+// where a long paging walk got to, so a service restarted after the process was killed can pick up from there.
+// The ids written so far are already in the content table, only the page token is kept here
+public class PagingCheckpoints {
+  private static final long MAX_AGE = 24 * 60 * 60 * 1000;  // page tokens this old aren't worth trusting
+  private Database mDB;
+
+  public PagingCheckpoints(Context context) {
+    super();
+
+    mDB = Database.instance(context);
+  }
+
+  public static String tableName() {
+    return "checkpoints";
+  }
+
+  public static String tableSQL() {
+    return "CREATE TABLE " + tableName() + " (" + Entry._ID + " INTEGER PRIMARY KEY," + Entry.COLUMN_NAME_REQUEST + " TEXT UNIQUE," + Entry.COLUMN_NAME_NEXT_TOKEN + " TEXT," + Entry.COLUMN_NAME_UPDATED + " INTEGER )";
+  }
+
+  // returns null if there is no walk to resume, an expired checkpoint is cleared
+  public Checkpoint get(String requestIdentifier) {
+    Checkpoint result = null;
+    boolean expired = false;
+    Cursor cursor = null;
+
+    try {
+      SQLiteDatabase db = mDB.getReadableDatabase();
+
+      cursor = db.query(tableName(), new String[]{Entry.COLUMN_NAME_NEXT_TOKEN, Entry.COLUMN_NAME_UPDATED}, Entry.COLUMN_NAME_REQUEST + " = ?", new String[]{requestIdentifier}, null, null, null);
+
+      if (cursor.moveToFirst()) {
+        String nextToken = cursor.getString(0);
+
+        expired = System.currentTimeMillis() - cursor.getLong(1) > MAX_AGE;
+
+        if (!expired && !TextUtils.isEmpty(nextToken))
+          result = new Checkpoint(nextToken);
+      }
+    } catch (Exception e) {
+      DUtils.log("PagingCheckpoints get exception: " + e.getMessage());
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+
+    if (expired) {
+      DUtils.log("checkpoint expired: " + requestIdentifier);
+      clear(requestIdentifier);
+    }
+
+    return result;
+  }
+
+  // nextToken is the page to ask for when resuming
+  public void save(String requestIdentifier, String nextToken) {
+    try {
+      SQLiteDatabase db = mDB.getWritableDatabase();
+
+      Database.beginWrite(db);
+      try {
+        ContentValues values = new ContentValues();
+        values.put(Entry.COLUMN_NAME_REQUEST, requestIdentifier);
+        values.put(Entry.COLUMN_NAME_NEXT_TOKEN, nextToken);
+        values.put(Entry.COLUMN_NAME_UPDATED, System.currentTimeMillis());
+
+        db.insertWithOnConflict(tableName(), null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+        db.setTransactionSuccessful();
+      } finally {
+        Database.endWrite(db);
+      }
+    } catch (Exception e) {
+      DUtils.log("PagingCheckpoints save exception: " + e.getMessage());
+    }
+  }
+
+  public void clear(String requestIdentifier) {
+    try {
+      SQLiteDatabase db = mDB.getWritableDatabase();
+
+      Database.beginWrite(db);
+      try {
+        db.delete(tableName(), Entry.COLUMN_NAME_REQUEST + " = ?", new String[]{requestIdentifier});
+
+        db.setTransactionSuccessful();
+      } finally {
+        Database.endWrite(db);
+      }
+    } catch (Exception e) {
+      DUtils.log("PagingCheckpoints clear exception: " + e.getMessage());
+    }
+  }
+
+  public static class Checkpoint {
+    public final String nextToken;
+
+    private Checkpoint(String nextToken) {
+      super();
+
+      this.nextToken = nextToken;
+    }
+  }
+
+  public class Entry implements BaseColumns {
+    public static final String COLUMN_NAME_REQUEST = "request";
+    public static final String COLUMN_NAME_NEXT_TOKEN = "next_token";
+    public static final String COLUMN_NAME_UPDATED = "updated";
+  }
+}
@@ -0,0 +1,171 @@
+package com.distantfuture.videos.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+import com.distantfuture.videos.misc.DUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// one row per cached list: what kind of request it was, the channel it belongs to, when it was last used and
+// when it was last fetched.  CacheEvictor uses this to decide which lists to drop, ListServiceTask to decide
+// when a cached list needs revalidating
+public class RequestInfo {
+  private Database mDB;
+
+  public RequestInfo(Context context) {
+    super();
+
+    mDB = Database.instance(context);
+  }
+
+  public static String tableName() {
+    return "request_info";
+  }
+
+  public static String tableSQL() {
+    return "CREATE TABLE " + tableName() + " (" + Entry._ID + " INTEGER PRIMARY KEY," + Entry.COLUMN_NAME_REQUEST + " TEXT UNIQUE," + Entry.COLUMN_NAME_TYPE + " TEXT," + Entry.COLUMN_NAME_CHANNEL + " TEXT," + Entry.COLUMN_NAME_LAST_ACCESS + " INTEGER," + Entry.COLUMN_NAME_LAST_FETCH + " INTEGER )";
+  }
+
+  // the list was just shown or fetched.  Updates in place, a replace would lose the fetch info
+  public void touch(String requestIdentifier, String type, String channel) {
+    try {
+      SQLiteDatabase db = mDB.getWritableDatabase();
+
+      Database.beginWrite(db);
+      try {
+        ContentValues values = new ContentValues();
+        values.put(Entry.COLUMN_NAME_TYPE, type);
+        values.put(Entry.COLUMN_NAME_CHANNEL, channel);
+        values.put(Entry.COLUMN_NAME_LAST_ACCESS, System.currentTimeMillis());
+
+        if (db.update(tableName(), values, Entry.COLUMN_NAME_REQUEST + " = ?", new String[]{requestIdentifier}) == 0) {
+          values.put(Entry.COLUMN_NAME_REQUEST, requestIdentifier);
+
+          db.insertWithOnConflict(tableName(), null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        }
+
+        db.setTransactionSuccessful();
+      } finally {
+        Database.endWrite(db);
+      }
+    } catch (Exception e) {
+      DUtils.log("RequestInfo touch exception: " + e.getMessage());
+    }
+  }
+
+  // a fetch from the net finished with every row written
+  public void fetched(String requestIdentifier) {
+    try {
+      SQLiteDatabase db = mDB.getWritableDatabase();
+
+      Database.beginWrite(db);
+      try {
+        ContentValues values = new ContentValues();
+        values.put(Entry.COLUMN_NAME_LAST_FETCH, System.currentTimeMillis());
+
+        if (db.update(tableName(), values, Entry.COLUMN_NAME_REQUEST + " = ?", new String[]{requestIdentifier}) == 0) {
+          values.put(Entry.COLUMN_NAME_REQUEST, requestIdentifier);
+          values.put(Entry.COLUMN_NAME_LAST_ACCESS, System.currentTimeMillis());
+
+          db.insertWithOnConflict(tableName(), null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        }
+
+        db.setTransactionSuccessful();
+      } finally {
+        Database.endWrite(db);
+      }
+    } catch (Exception e) {
+      DUtils.log("RequestInfo fetched exception: " + e.getMessage());
+    }
+  }
+
+  // time of the last successful fetch, 0 if never (or not since the list was evicted)
+  public long lastFetch(String requestIdentifier) {
+    long result = 0;
+    Cursor cursor = null;
+
+    try {
+      SQLiteDatabase db = mDB.getReadableDatabase();
+
+      cursor = db.query(tableName(), new String[]{Entry.COLUMN_NAME_LAST_FETCH}, Entry.COLUMN_NAME_REQUEST + " = ?", new String[]{requestIdentifier}, null, null, null);
+
+      if (cursor.moveToFirst() && !cursor.isNull(0))
+        result = cursor.getLong(0);
+    } catch (Exception e) {
+      DUtils.log("RequestInfo lastFetch exception: " + e.getMessage());
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+
+    return result;
+  }
+
+  // least recently used first
+  public List<Info> allByLastAccess() {
+    List<Info> result = new ArrayList<Info>();
+    Cursor cursor = null;
+
+    try {
+      SQLiteDatabase db = mDB.getReadableDatabase();
+
+      cursor = db.query(tableName(), new String[]{Entry.COLUMN_NAME_REQUEST, Entry.COLUMN_NAME_TYPE, Entry.COLUMN_NAME_CHANNEL, Entry.COLUMN_NAME_LAST_ACCESS}, null, null, null, null, Entry.COLUMN_NAME_LAST_ACCESS + " ASC");
+
+      while (cursor.moveToNext())
+        result.add(new Info(cursor.getString(0), cursor.getString(1), cursor.getString(2), cursor.getLong(3)));
+    } catch (Exception e) {
+      DUtils.log("RequestInfo allByLastAccess exception: " + e.getMessage());
+    } finally {
+      if (cursor != null)
+        cursor.close();
+    }
+
+    return result;
+  }
+
+  public void remove(String requestIdentifier) {
+    try {
+      SQLiteDatabase db = mDB.getWritableDatabase();
+
+      Database.beginWrite(db);
+      try {
+        db.delete(tableName(), Entry.COLUMN_NAME_REQUEST + " = ?", new String[]{requestIdentifier});
+
+        db.setTransactionSuccessful();
+      } finally {
+        Database.endWrite(db);
+      }
+    } catch (Exception e) {
+      DUtils.log("RequestInfo remove exception: " + e.getMessage());
+    }
+  }
+
+  public static class Info {
+    public final String request;
+    public final String type;  // ListServiceRequest.RequestType name, null if unknown
+    public final String channel;  // null if the list isn't for a channel or it's unknown
+    public final long lastAccess;
+
+    private Info(String request, String type, String channel, long lastAccess) {
+      super();
+
+      this.request = request;
+      this.type = type;
+      this.channel = channel;
+      this.lastAccess = lastAccess;
+    }
+  }
+
+  public class Entry implements BaseColumns {
+    public static final String COLUMN_NAME_REQUEST = "request";
+    public static final String COLUMN_NAME_TYPE = "type";
+    public static final String COLUMN_NAME_CHANNEL = "channel";
+    public static final String COLUMN_NAME_LAST_ACCESS = "last_access";
+    public static final String COLUMN_NAME_LAST_FETCH = "last_fetch";
+  }
+}
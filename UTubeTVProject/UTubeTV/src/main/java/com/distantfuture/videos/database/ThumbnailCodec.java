@@ -0,0 +1,54 @@
+package com.distantfuture.videos.database;
+
+// most thumbnails are https://i.ytimg.com/vi/<video id>/hqdefault.jpg and friends.  Those are stored as '#', a
+// template code and the part in between, "#c" + id is 13 chars instead of 48.  Anything else is stored as is, a
+// URL never starts with '#'
+public class ThumbnailCodec {
+  private static final char MARKER = '#';
+  private static final String[] PREFIXES = {"https://i.ytimg.com/vi/", "http://i.ytimg.com/vi/"};
+  private static final String[] SUFFIXES = {"/default.jpg", "/mqdefault.jpg", "/hqdefault.jpg", "/sddefault.jpg", "/maxresdefault.jpg"};
+
+  public static String encode(String url) {
+    if (url == null)
+      return null;
+
+    for (int p = 0; p < PREFIXES.length; p++) {
+      if (url.startsWith(PREFIXES[p])) {
+        for (int s = 0; s < SUFFIXES.length; s++) {
+          if (url.endsWith(SUFFIXES[s]) && url.length() >= PREFIXES[p].length() + SUFFIXES[s].length()) {
+            String variable = url.substring(PREFIXES[p].length(), url.length() - SUFFIXES[s].length());
+
+            return MARKER + String.valueOf(templateCode(p, s)) + variable;
+          }
+        }
+      }
+    }
+
+    return url;
+  }
+
+  public static String decode(String stored) {
+    if (stored == null || stored.length() < 2 || stored.charAt(0) != MARKER)
+      return stored;
+
+    int template = stored.charAt(1) - 'a';
+    if (template < 0 || template >= PREFIXES.length * SUFFIXES.length)
+      return stored;
+
+    String prefix = PREFIXES[template / SUFFIXES.length];
+    String suffix = SUFFIXES[template % SUFFIXES.length];
+
+    // sized exactly so the URL is built without growing the buffer
+    StringBuilder result = new StringBuilder(prefix.length() + stored.length() - 2 + suffix.length());
+
+    result.append(prefix);
+    result.append(stored, 2, stored.length());
+    result.append(suffix);
+
+    return result.toString();
+  }
+
+  private static char templateCode(int prefixIndex, int suffixIndex) {
+    return (char) ('a' + prefixIndex * SUFFIXES.length + suffixIndex);
+  }
+}
@@ -5,9 +5,12 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
 
 import com.distantfuture.videos.misc.DUtils;
 
+import java.util.List;
+
 public class YouTubeContentProvider extends ContentProvider {
   private static String sAUTHORITY;
   private static String sCONTENTS;
@@ -30,6 +33,32 @@ public class YouTubeContentProvider extends ContentProvider {
     return Uri.parse(contents(context));
   }
 
+  // content/<table>, changes to any list in the table notify loaders on its request URIs too
+  public static Uri tableURI(Context context, String tableName) {
+    return contentsURI(context).buildUpon().appendPath(tableName).build();
+  }
+
+  // content/<table>/<requestIdentifier>, a loader watching one list is only re-queried when that list changes
+  public static Uri requestURI(Context context, String tableName, String requestIdentifier) {
+    if (requestIdentifier == null)
+      return tableURI(context, tableName);
+
+    return tableURI(context, tableName).buildUpon().appendPath(requestIdentifier).build();
+  }
+
+  private static DatabaseTables.DatabaseTable tableForURI(Uri uri) {
+    List<String> segments = uri.getPathSegments();
+
+    if (segments.size() >= 2) {
+      for (DatabaseTables.DatabaseTable table : DatabaseTables.tables()) {
+        if (table.tableName().equals(segments.get(1)))
+          return table;
+      }
+    }
+
+    return null;
+  }
+
   @Override
   public int delete(Uri uri, String selection, String[] selectionArgs) {
     // Implement this to handle requests to delete one or more rows.
@@ -56,27 +85,26 @@ public class YouTubeContentProvider extends ContentProvider {
 
   @Override
   public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
-    Cursor cursor = null;
-
-    // Used for a single person, just add the id to the end
-    String CONTENT_BASE = contents(getContext()) + "/";
+    return query(uri, projection, selection, selectionArgs, sortOrder, null);
+  }
 
-    if (YouTubeContentProvider.contentsURI(getContext()).equals(uri)) {
-      if (sortOrder.equals("pl")) {
-        DatabaseAccess access = new DatabaseAccess(getContext(), DatabaseTables.playlistTable());
+  // CursorLoader passes a signal that's cancelled when the loader is restarted, so a filter that's been typed
+  // over stops querying instead of finishing work nobody will see
+  @Override
+  public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder, CancellationSignal cancellationSignal) {
+    Cursor cursor = null;
+    DatabaseTables.DatabaseTable table = tableForURI(uri);
 
-        cursor = access.getCursor(selection, selectionArgs, projection);
-      } else {
-        DatabaseAccess access = new DatabaseAccess(getContext(), DatabaseTables.videoTable());
+    if (table != null) {
+      DatabaseAccess access = new DatabaseAccess(getContext(), table);
 
-        cursor = access.getCursor(selection, selectionArgs, projection);
-      }
+      // sortOrder can be null for the table's default order
+      cursor = access.getCursor(selection, selectionArgs, projection, sortOrder, cancellationSignal);
 
-      cursor.setNotificationUri(getContext().getContentResolver(), YouTubeContentProvider.contentsURI(getContext()));
-    } else if (uri.toString().startsWith(CONTENT_BASE)) {
-      final long id = Long.parseLong(uri.getLastPathSegment());
-      DUtils.log("" + id);
-    }
+      if (cursor != null)
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+    } else
+      DUtils.log("YouTubeContentProvider unknown uri: " + uri);
 
     return cursor;
   }
@@ -3,10 +3,13 @@ package com.distantfuture.videos.mainactivity;
 import android.app.ActionBar;
 import android.app.ActivityOptions;
 import android.app.Fragment;
+import android.content.Context;
 import android.content.Intent;
 import android.content.res.Configuration;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
@@ -18,6 +21,8 @@ import com.distantfuture.videos.activities.ViewServerActivity;
 import com.distantfuture.videos.cast.CastActivity;
 import com.distantfuture.videos.channellookup.ChannelLookupActivity;
 import com.distantfuture.videos.content.Content;
+import com.distantfuture.videos.database.Database;
+import com.distantfuture.videos.database.DatabaseMetrics;
 import com.distantfuture.videos.donate.DonateActivity;
 import com.distantfuture.videos.introactivity.IntroActivity;
 import com.distantfuture.videos.misc.ActionBarSpinnerAdapter;
@@ -27,6 +32,9 @@ import com.distantfuture.videos.misc.ColorPickerFragment;
 import com.distantfuture.videos.misc.Constants;
 import com.distantfuture.videos.misc.MainApplication;
 import com.distantfuture.videos.misc.Utils;
+import com.distantfuture.videos.services.YouTubeService;
+import com.distantfuture.videos.youtube.ApiMetrics;
+import com.distantfuture.videos.youtube.QuotaBudget;
 import com.distantfuture.videos.youtube.VideoPlayer;
 import com.distantfuture.videos.youtube.YouTubeAPI;
 import com.google.android.youtube.player.YouTubeInitializationResult;
@@ -35,6 +43,8 @@ import com.inscription.WhatsNewDialog;
 
 import org.codechimp.apprater.AppRater;
 
+import java.util.List;
+
 import de.greenrobot.event.EventBus;
 
 public class DrawerActivity extends ViewServerActivity implements DrawerActivitySupport {
@@ -324,6 +334,15 @@ public class DrawerActivity extends ViewServerActivity implements DrawerActivity
         ChannelLookupActivity.show(this);
         return true;
 
+      // for development only, logs the per endpoint and database read metrics
+      case R.id.action_api_usage:
+        ApiMetrics.dump();
+        DatabaseMetrics.dump();
+        Utils.toast(this, String.format("Quota used today: %d of %d", QuotaBudget.instance(this)
+            .unitsUsed(), QuotaBudget.DAILY_LIMIT));
+        checkQueryPlans();
+        return true;
+
       case R.id.action_whats_new:
         WhatsNewDialog.showWhatsNew(this, true);
         return true;
@@ -377,6 +396,29 @@ public class DrawerActivity extends ViewServerActivity implements DrawerActivity
     // clear back stack when using drawer
     getFragmentManager().popBackStack();
     Utils.showFragment(this, mContent.fragmentForIndex(position), R.id.fragment_holder, animate ? 3 : 0, false);
+
+    // warm up the sections and channels the user might go to next, runs after the one just shown
+    YouTubeService.startPrefetch(this);
+  }
+
+  // dev tools, makes sure the grid queries still use the request indexes
+  private void checkQueryPlans() {
+    final Context context = getApplicationContext();
+
+    new AsyncTask<Void, Void, List<String>>() {
+      @Override
+      protected List<String> doInBackground(Void... params) {
+        return Database.instance(context).checkQueryPlans();
+      }
+
+      @Override
+      protected void onPostExecute(List<String> regressions) {
+        if (regressions.isEmpty())
+          Utils.toast(context, "Query plans OK");
+        else
+          Utils.toast(context, "Query plans regressed: " + TextUtils.join(", ", regressions));
+      }
+    }.execute();
   }
 
   /**
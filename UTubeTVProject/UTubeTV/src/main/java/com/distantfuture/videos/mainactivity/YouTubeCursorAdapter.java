@@ -5,6 +5,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.DataSetObserver;
 import android.graphics.Typeface;
+import android.os.AsyncTask;
 import android.text.Spannable;
 import android.text.SpannableString;
 import android.text.style.ForegroundColorSpan;
@@ -20,7 +21,9 @@ import android.widget.SimpleCursorAdapter;
 import android.widget.TextView;
 
 import com.distantfuture.videos.R;
+import com.distantfuture.videos.database.ColumnIndexes;
 import com.distantfuture.videos.database.DatabaseAccess;
+import com.distantfuture.videos.database.FullDescriptions;
 import com.distantfuture.videos.database.YouTubeData;
 import com.distantfuture.videos.misc.AppUtils;
 import com.distantfuture.videos.misc.DUtils;
@@ -34,6 +37,8 @@ import com.squareup.picasso.Picasso;
 
 import org.ocpsoft.prettytime.PrettyTime;
 
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Date;
 
 public class YouTubeCursorAdapter extends SimpleCursorAdapter implements AdapterView.OnItemClickListener, VideoMenuView.VideoMenuViewListener, View.OnClickListener {
@@ -41,6 +46,7 @@ public class YouTubeCursorAdapter extends SimpleCursorAdapter implements Adapter
   private final LayoutInflater inflater;
   private final YouTubeData mReusedData = new YouTubeData(); // avoids a memory alloc when drawing
   private final PublishedDateCache mDateCache = new PublishedDateCache();
+  private ColumnIndexes mColumnIndexes; // for the current cursor, set in swapCursor
   private int animationID = 0;
   private Context mContext;
   private Theme mTheme;
@@ -168,7 +174,7 @@ public class YouTubeCursorAdapter extends SimpleCursorAdapter implements Adapter
           DatabaseAccess database = new DatabaseAccess(mContext, mRequest);
 
           itemMap.setHidden(false);
-          database.updateItem(itemMap);
+          database.updateHidden(Arrays.asList(itemMap));
         } else {
           mListener.handleClickFromAdapter(position, itemMap);
         }
@@ -202,7 +208,16 @@ public class YouTubeCursorAdapter extends SimpleCursorAdapter implements Adapter
       // toggles links by setting text again
       String sequence = descriptionView.getText()
           .toString(); // getText() could return a StringSpanner, toString() gets the raw string
+
       descriptionView.setText(sequence);
+
+      // the cursor only has a preview, load the rest off the main thread when expanding
+      if (setMax) {
+        String contentId = (String) descriptionView.getTag(R.id.description_view);
+
+        if (contentId != null)
+          new FullDescriptionTask(mContext, descriptionView, contentId).execute();
+      }
     }
   }
 
@@ -300,7 +315,7 @@ public class YouTubeCursorAdapter extends SimpleCursorAdapter implements Adapter
     ViewHolder holder = (ViewHolder) convertView.getTag();
 
     Cursor cursor = (Cursor) getItem(position);
-    YouTubeData itemMap = mRequest.databaseTable().cursorToItem(cursor, mReusedData);
+    YouTubeData itemMap = mRequest.databaseTable().cursorToItem(cursor, mColumnIndexes, mReusedData);
 
     Picasso.with(mContext).load(itemMap.mThumbnail)
         .fit()
@@ -315,6 +330,9 @@ public class YouTubeCursorAdapter extends SimpleCursorAdapter implements Adapter
 
     // hide description if empty
     if (holder.description != null) {
+      // onClick() uses this to find the full description
+      holder.description.setTag(R.id.description_view, itemMap.mVideo != null ? itemMap.mVideo : itemMap.mPlaylist);
+
       String desc = itemMap.mDescription;
       if (desc != null && (desc.length() > 0)) {
         holder.description.setVisibility(View.VISIBLE);
@@ -358,6 +376,14 @@ public class YouTubeCursorAdapter extends SimpleCursorAdapter implements Adapter
     return convertView;
   }
 
+  @Override
+  public Cursor swapCursor(Cursor newCursor) {
+    // look up the columns once rather than on every bind
+    mColumnIndexes = newCursor != null ? new ColumnIndexes(newCursor) : null;
+
+    return super.swapCursor(newCursor);
+  }
+
   // VideoMenuViewListener
   @Override
   public void showVideoInfo(Long itemId) {
@@ -391,7 +417,7 @@ public class YouTubeCursorAdapter extends SimpleCursorAdapter implements Adapter
 
     if (videoMap != null) {
       videoMap.setHidden(!videoMap.isHidden());
-      database.updateItem(videoMap);
+      database.updateHidden(Arrays.asList(videoMap));
     }
   }
 
@@ -454,4 +480,35 @@ public class YouTubeCursorAdapter extends SimpleCursorAdapter implements Adapter
     }
 
   }
+
+  // sets the full description once it's read, unless the view was collapsed or reused for another row by then
+  private static class FullDescriptionTask extends AsyncTask<Void, Void, String> {
+    private final Context mContext;
+    private final WeakReference<TextView> mView;
+    private final String mContentId;
+
+    public FullDescriptionTask(Context context, TextView view, String contentId) {
+      super();
+
+      mContext = context.getApplicationContext();
+      mView = new WeakReference<TextView>(view);
+      mContentId = contentId;
+    }
+
+    @Override
+    protected String doInBackground(Void... params) {
+      return new FullDescriptions(mContext).get(mContentId);
+    }
+
+    @Override
+    protected void onPostExecute(String fullDescription) {
+      TextView view = mView.get();
+
+      if (fullDescription == null || view == null)
+        return;
+
+      if (mContentId.equals(view.getTag(R.id.description_view)) && view.getMaxLines() == Integer.MAX_VALUE)
+        view.setText(fullDescription);
+    }
+  }
 }
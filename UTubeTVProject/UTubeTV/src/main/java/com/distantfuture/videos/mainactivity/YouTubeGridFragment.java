@@ -12,8 +12,12 @@ import android.content.Loader;
 import android.content.res.TypedArray;
 import android.database.Cursor;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcelable;
+import android.provider.BaseColumns;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -49,6 +53,7 @@ import com.nhaarman.listviewanimations.itemmanipulation.swipedismiss.SwipeDismis
 import com.nhaarman.listviewanimations.swinginadapters.prepared.SwingBottomInAnimationAdapter;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import de.greenrobot.event.EventBus;
 import uk.co.senab.actionbarpulltorefresh.library.ActionBarPullToRefresh;
@@ -69,6 +74,22 @@ public class YouTubeGridFragment extends ContractFragment<DrawerActivitySupport>
   private SearchView mSearchView;
   private Drawable mSearchDrawable;
   private boolean mSearchSubmitted = false;
+  // typing restarts the loader after a pause rather than on every character
+  private static final int FILTER_DELAY_MS = 250;
+  private final Handler mFilterHandler = new Handler(Looper.getMainLooper());
+  private final Runnable mRestartLoaderRunnable = new Runnable() {
+    @Override
+    public void run() {
+      getLoaderManager().restartLoader(0, null, YouTubeGridFragment.this);
+    }
+  };
+  // ids the last filter matched, a filter that extends it only has to search these
+  private static final int MAX_NARROW_IDS = 500;
+  private String mNarrowFilter;
+  private int mNarrowQueryID;
+  private long[] mNarrowIds;
+  private String mLoadingFilter;
+  private int mLoadingQueryID;
 
   public static YouTubeGridFragment newInstance(ListServiceRequest request) {
     YouTubeGridFragment fragment = new YouTubeGridFragment();
@@ -198,13 +219,13 @@ public class YouTubeGridFragment extends ContractFragment<DrawerActivitySupport>
   @Override
   public void onDismiss(AbsListView listView, int[] reverseSortedPositions) {
     ArrayList<Long> ids = new ArrayList<Long>();
+    List<YouTubeData> toggled = new ArrayList<YouTubeData>();
+    DatabaseAccess database = new DatabaseAccess(getActivity(), mRequest);
 
     for (int position : reverseSortedPositions) {
       Cursor cursor = (Cursor) mAdapter.getItem(position);
       YouTubeData itemMap = mRequest.databaseTable().cursorToItem(cursor, null);
 
-      DatabaseAccess database = new DatabaseAccess(getActivity(), mRequest);
-
       ids.add(itemMap.mID);
 
       if (itemMap != null) {
@@ -214,11 +235,15 @@ public class YouTubeGridFragment extends ContractFragment<DrawerActivitySupport>
           database.deleteItem(itemMap.mID);
         else {
           itemMap.setHidden(!itemMap.isHidden());
-          database.updateItem(itemMap);
+          toggled.add(itemMap);
         }
       }
     }
 
+    // one transaction for the lot
+    if (toggled.size() > 0)
+      database.updateHidden(toggled);
+
     UndoBarController.UndoListener listener = new UndoBarController.UndoListener() {
       @Override
       public void onUndo(Parcelable parcelable) {
@@ -231,14 +256,18 @@ public class YouTubeGridFragment extends ContractFragment<DrawerActivitySupport>
 
         Bundle info = (Bundle) parcelable;
         long ids[] = info.getLongArray("id_array");
+        List<YouTubeData> toggled = new ArrayList<YouTubeData>();
 
         for (long id : ids) {
           YouTubeData itemMap = database.getItemWithID(id);
           if (itemMap != null) {
             itemMap.setHidden(!itemMap.isHidden());
-            database.updateItem(itemMap);
+            toggled.add(itemMap);
           }
         }
+
+        if (toggled.size() > 0)
+          database.updateHidden(toggled);
       }
     };
     Bundle info = new Bundle();
@@ -253,7 +282,13 @@ public class YouTubeGridFragment extends ContractFragment<DrawerActivitySupport>
   public boolean setFilter(String filter) {
     if (!TextUtils.equals(mFilter, filter)) {
       mFilter = filter;
-      getLoaderManager().restartLoader(0, null, this);
+
+      // restarting cancels the query in flight, see YouTubeContentProvider.query
+      mFilterHandler.removeCallbacks(mRestartLoaderRunnable);
+      if (filter == null)
+        mRestartLoaderRunnable.run();  // clearing the filter shouldn't wait
+      else
+        mFilterHandler.postDelayed(mRestartLoaderRunnable, FILTER_DELAY_MS);
 
       return true;
     }
@@ -317,6 +352,12 @@ public class YouTubeGridFragment extends ContractFragment<DrawerActivitySupport>
   public void onDestroy() {
     EventBus.getDefault().unregister(this);
 
+    mFilterHandler.removeCallbacks(mRestartLoaderRunnable);
+
+    // no one is waiting for this list anymore
+    if (mRequest != null)
+      YouTubeService.cancelListRequest(getActivity(), mRequest);
+
     super.onDestroy();
   }
 
@@ -396,25 +437,78 @@ public class YouTubeGridFragment extends ContractFragment<DrawerActivitySupport>
 
     // Debug.log(mRequest.toString());
 
-    String sortOrder = (DatabaseTables.videoTable() == table) ? "vi" : "pl"; // stupid hack
-
     mCachedHiddenPref = AppUtils.instance(getActivity()).showHiddenItems();
     int queryID = DatabaseTables.VISIBLE_ITEMS;
     if (mCachedHiddenPref)
       queryID = DatabaseTables.ALL_ITEMS;
 
     Database.DatabaseQuery queryParams = table.queryParams(queryID, mRequest.requestIdentifier(), mFilter);
+    String selection = narrowSelection(queryParams.mSelection, queryID);
+
+    mLoadingFilter = mFilter;
+    mLoadingQueryID = queryID;
 
     // startRequest below will notify when done and we hide the progress bar
     mEmptyListHelper.updateEmptyListView("Talking to YouTube...", false);
 
     YouTubeService.startListRequest(getActivity(), mRequest, false);
 
-    return new CursorLoader(getActivity(), YouTubeContentProvider.contentsURI(getActivity()), queryParams.mProjection, queryParams.mSelection, queryParams.mSelectionArgs, sortOrder);
+    // only re-queried when this list changes
+    Uri uri = YouTubeContentProvider.requestURI(getActivity(), table.tableName(), mRequest.requestIdentifier());
+
+    return new CursorLoader(getActivity(), uri, queryParams.mProjection, selection, queryParams.mSelectionArgs, queryParams.mOrderBy);
+  }
+
+  // a longer filter can only match fewer rows, so if it extends the last one only search what that one found.
+  // The ids are numbers we read from the database, safe to put in the SQL
+  private String narrowSelection(String selection, int queryID) {
+    if (mFilter == null || mNarrowIds == null || mNarrowQueryID != queryID || !mFilter.startsWith(mNarrowFilter))
+      return selection;
+
+    StringBuilder result = new StringBuilder();
+
+    if (selection != null)
+      result.append(selection).append(" AND ");
+
+    result.append(BaseColumns._ID).append(" IN (");
+    for (int i = 0; i < mNarrowIds.length; i++) {
+      if (i > 0)
+        result.append(',');
+      result.append(mNarrowIds[i]);
+    }
+    result.append(')');
+
+    return result.toString();
+  }
+
+  private void rememberNarrowIds(Cursor cursor) {
+    mNarrowIds = null;
+    mNarrowFilter = null;
+
+    if (cursor == null || mLoadingFilter == null || cursor.getCount() > MAX_NARROW_IDS)
+      return;
+
+    int idColumn = cursor.getColumnIndex(BaseColumns._ID);
+    if (idColumn == -1)
+      return;
+
+    long[] ids = new long[cursor.getCount()];
+    int position = cursor.getPosition();
+
+    cursor.moveToPosition(-1);
+    while (cursor.moveToNext())
+      ids[cursor.getPosition()] = cursor.getLong(idColumn);
+    cursor.moveToPosition(position);
+
+    mNarrowIds = ids;
+    mNarrowFilter = mLoadingFilter;
+    mNarrowQueryID = mLoadingQueryID;
   }
 
   @Override
   public void onLoadFinished(Loader<Cursor> loader, Cursor c) {
+    rememberNarrowIds(c);
+
     mAdapter.swapCursor(c);
   }
 
@@ -72,6 +72,10 @@ public class AppUtils {
     return mConnectionMonitor.hasNetworkConnection();
   }
 
+  public boolean isWiFi() {
+    return mConnectionMonitor.isWiFi();
+  }
+
   public void runOnMainThread(Runnable action) {
     if (action != null)
       mainThreadHandler.post(action);
@@ -147,6 +151,25 @@ public class AppUtils {
     mPreferences.setString("channel_index", channelId);
   }
 
+  // quota day is yyyyMMdd in pacific time, see QuotaBudget
+  public String quotaDay() {
+    return mPreferences.getString("quota_day", null);
+  }
+
+  public int quotaUnitsUsed() {
+    return mPreferences.getInt("quota_units", 0);
+  }
+
+  public boolean quotaExhausted() {
+    return mPreferences.getBoolean("quota_exhausted", false);
+  }
+
+  public void saveQuotaUsage(String day, int unitsUsed, boolean exhausted) {
+    mPreferences.setString("quota_day", day);
+    mPreferences.setInt("quota_units", unitsUsed);
+    mPreferences.setBoolean("quota_exhausted", exhausted);
+  }
+
   private String prefKeyForChannelIds() {
     String base = "channel_ids_";
 
@@ -50,13 +50,16 @@ public class ConnectionMonitor {
     NetworkInfo activeNetwork = mConnectivityManager.getActiveNetworkInfo();
     boolean isConnected = activeNetwork != null && activeNetwork.isConnectedOrConnecting();
 
-    // could add this later (from dev sample)
-    //    if (isConnected) {
-    //      boolean isWiFi = activeNetwork.getType() == ConnectivityManager.TYPE_WIFI;
-    //
-    //      Debug.log("got wifi");
-    //    }
-
     return isConnected;
   }
+
+  // connected and not metered, prefetching only happens on wifi
+  public boolean isWiFi() {
+    NetworkInfo activeNetwork = mConnectivityManager.getActiveNetworkInfo();
+
+    if (activeNetwork == null || !activeNetwork.isConnected())
+      return false;
+
+    return activeNetwork.getType() == ConnectivityManager.TYPE_WIFI && !mConnectivityManager.isActiveNetworkMetered();
+  }
 }
@@ -25,6 +25,7 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Vibrator;
+import android.util.LruCache;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
@@ -39,11 +40,12 @@ import org.joda.time.format.ISOPeriodFormat;
 import org.joda.time.format.PeriodFormatter;
 
 import java.lang.reflect.Field;
-import java.text.SimpleDateFormat;
 import java.util.Random;
 
 public class Utils {
   private static final PeriodFormatter mFormatter = ISOPeriodFormat.standard();
+  private static final LruCache<String, String> sDurationCache = new LruCache<String, String>(512);
+  private static final char[] sDurationBuffer = new char[32];
   private static float sScreenDensity = 0;
 
   public static void toast(Context context, final String message) {
@@ -161,17 +163,7 @@ public class Utils {
   }
 
   public static String millisecondsToDuration(long milliseconds) {
-    SimpleDateFormat df = new SimpleDateFormat("HH:mm:ss");
-    df.setTimeZone(java.util.TimeZone.getTimeZone("GMT"));
-
-    String result = df.format(milliseconds);
-
-    // strip off 00: from begining if present
-    final String zeros = "00:";
-    if (result.startsWith(zeros))
-      result = result.substring(zeros.length());
-
-    return result;
+    return secondsToDuration(Math.max(0, milliseconds / 1000));
   }
 
   public static String feedbackEmailAddress() {
@@ -201,11 +193,128 @@ public class Utils {
     return bitmap;
   }
 
+  // the same few durations come up over and over, so the formatted strings are cached
   public static String durationToDuration(String isoDuration) {
-    Period p = mFormatter.parsePeriod(isoDuration);
-    Seconds s = p.toStandardSeconds();
+    if (isoDuration == null)
+      return null;
+
+    String result = sDurationCache.get(isoDuration);
+
+    if (result == null) {
+      long seconds = isoDurationToSeconds(isoDuration);
+
+      // years, months or fractions, never seen from YouTube but let joda deal with it
+      if (seconds < 0) {
+        Period p = mFormatter.parsePeriod(isoDuration);
+        Seconds s = p.toStandardSeconds();
+
+        seconds = s.getSeconds();
+      }
+
+      result = secondsToDuration(seconds);
+      sDurationCache.put(isoDuration, result);
+    }
+
+    return result;
+  }
+
+  // parses PnWnDTnHnMnS, returns -1 for anything else
+  private static long isoDurationToSeconds(String isoDuration) {
+    final int length = isoDuration.length();
+
+    if (length < 2 || isoDuration.charAt(0) != 'P')
+      return -1;
+
+    long result = 0;
+    long value = 0;
+    boolean haveDigits = false;
+    boolean inTime = false;
+
+    for (int i = 1; i < length; i++) {
+      char c = isoDuration.charAt(i);
+
+      if (c >= '0' && c <= '9') {
+        value = value * 10 + (c - '0');
+        haveDigits = true;
+        continue;
+      }
+
+      if (c == 'T') {
+        if (inTime || haveDigits)
+          return -1;
+
+        inTime = true;
+        continue;
+      }
+
+      if (!haveDigits)
+        return -1;
+
+      long unit;
+      switch (c) {
+        case 'W':
+          unit = 7 * 24 * 60 * 60;
+          break;
+        case 'D':
+          unit = 24 * 60 * 60;
+          break;
+        case 'H':
+          unit = 60 * 60;
+          break;
+        case 'M':
+          unit = 60;
+          break;
+        case 'S':
+          unit = 1;
+          break;
+        default:
+          return -1;
+      }
+
+      // W and D only before the T, H M S only after it (an M before the T is months)
+      if (inTime != (unit < 24 * 60 * 60))
+        return -1;
+
+      result += value * unit;
+      value = 0;
+      haveDigits = false;
+    }
+
+    if (haveDigits)
+      return -1;
+
+    return result;
+  }
+
+  // mm:ss or HH:mm:ss, built right to left in a shared buffer
+  private static String secondsToDuration(long totalSeconds) {
+    synchronized (sDurationBuffer) {
+      final char[] buffer = sDurationBuffer;
+      int pos = buffer.length;
+
+      long hours = totalSeconds / (60 * 60);
+      int minutes = (int) ((totalSeconds / 60) % 60);
+      int seconds = (int) (totalSeconds % 60);
+
+      buffer[--pos] = (char) ('0' + seconds % 10);
+      buffer[--pos] = (char) ('0' + seconds / 10);
+      buffer[--pos] = ':';
+      buffer[--pos] = (char) ('0' + minutes % 10);
+      buffer[--pos] = (char) ('0' + minutes / 10);
+
+      if (hours > 0) {
+        buffer[--pos] = ':';
+
+        int digits = 0;
+        while (hours > 0 || digits < 2) {
+          buffer[--pos] = (char) ('0' + hours % 10);
+          hours /= 10;
+          digits++;
+        }
+      }
 
-    return millisecondsToDuration(s.getSeconds() * 1000);
+      return new String(buffer, pos, buffer.length - pos);
+    }
   }
 
   public static Bitmap drawTextToBitmap(Context gContext, int width, int height, String gText, int textColor, int shadowColor, int fontSizeInDP, int fillColor, int fillRadius, int strokeColor, float strokeWidth) {
@@ -337,9 +446,71 @@ public class Utils {
   }
 
   public static String condenseWhiteSpace(String inString) {
-    // trim text and then replace all occurrences of one or more than one whitespace character
-    // (including tabs, line breaks, etc) by one single whitespace
-    return inString.trim().replaceAll("\\s+", " ");
+    return condenseWhiteSpace(inString, 0);
+  }
+
+  // trims the text and replaces every run of whitespace (including tabs, line breaks, etc) with a single space.
+  // Single pass, and returns inString itself if nothing changed.  Pass 0 for maxLength to keep it all, otherwise
+  // stops once the result is maxLength long
+  public static String condenseWhiteSpace(String inString, int maxLength) {
+    if (inString == null)
+      return null;
+
+    final int length = inString.length();
+    final int limit = maxLength > 0 ? maxLength : Integer.MAX_VALUE;
+    char[] buffer = null;  // only allocated once the result differs from inString
+    int count = 0;
+    boolean pendingSpace = false;
+
+    for (int i = 0; i < length && count < limit; i++) {
+      char c = inString.charAt(i);
+
+      // same as trim(), anything up to ' ' is whitespace
+      if (c <= ' ') {
+        if (count > 0)
+          pendingSpace = true;
+
+        continue;
+      }
+
+      if (pendingSpace) {
+        pendingSpace = false;
+
+        // no room for the space and a character after it
+        if (count + 1 >= limit)
+          break;
+
+        // still matches inString if the run was a single ' '
+        if (buffer == null && !(count == i - 1 && inString.charAt(count) == ' '))
+          buffer = condenseBuffer(inString, count, Math.min(length, limit));
+
+        if (buffer != null)
+          buffer[count] = ' ';
+
+        count++;
+      }
+
+      if (buffer == null && count != i)
+        buffer = condenseBuffer(inString, count, Math.min(length, limit));
+
+      if (buffer != null)
+        buffer[count] = c;
+
+      count++;
+    }
+
+    if (buffer == null)
+      return count == length ? inString : inString.substring(0, count);
+
+    return new String(buffer, 0, count);
+  }
+
+  private static char[] condenseBuffer(String inString, int count, int size) {
+    char[] result = new char[size];
+
+    inString.getChars(0, count, result, 0);
+
+    return result;
   }
 
   public static boolean isPortrait(Context context) {
@@ -0,0 +1,164 @@
+package com.distantfuture.videos.services;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.distantfuture.videos.R;
+import com.distantfuture.videos.content.ChannelSetManager;
+import com.distantfuture.videos.database.DatabaseAccess;
+import com.distantfuture.videos.database.DatabaseTables;
+import com.distantfuture.videos.database.PagingCheckpoints;
+import com.distantfuture.videos.database.RequestInfo;
+import com.distantfuture.videos.database.YouTubeData;
+import com.distantfuture.videos.misc.DUtils;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// keeps the cached lists from growing forever.  A pass drops lists older than their type's TTL, then the least
+// recently used lists while their rows are over the byte budget.  Only a few lists per pass, YouTubeService
+// runs passes at background priority after list requests, and the next one is due right away if there's more to do.
+// Hidden rows of channels the user follows are never dropped, hiding is the user's work
+public class CacheEvictor {
+  private static final long HOUR = 60 * 60 * 1000;
+  private static final long DAY = 24 * HOUR;
+  private static final long BYTE_BUDGET = 32 * 1024 * 1024;
+  private static final long RECENT_ACCESS = 10 * 60 * 1000;  // never evict a list used this recently
+  private static final long PASS_INTERVAL = HOUR;
+  private static final int MAX_EVICTIONS_PER_PASS = 8;
+  private static long sLastPass = 0;
+  private static boolean sMoreToDo = false;
+  private final Context mContext;
+  private final RequestInfo mRequestInfo;
+
+  public CacheEvictor(Context context) {
+    super();
+
+    mContext = context.getApplicationContext();
+    mRequestInfo = new RequestInfo(mContext);
+  }
+
+  // once an hour, or right away if the last pass stopped early
+  public static synchronized boolean isDue() {
+    return sMoreToDo || sLastPass == 0 || SystemClock.elapsedRealtime() - sLastPass > PASS_INTERVAL;
+  }
+
+  private static synchronized void passFinished(boolean moreToDo) {
+    sLastPass = SystemClock.elapsedRealtime();
+    sMoreToDo = moreToDo;
+  }
+
+  public void runPass() {
+    boolean moreToDo = false;
+
+    try {
+      moreToDo = evict();
+    } catch (Exception e) {
+      DUtils.log("CacheEvictor exception: " + e.getMessage());
+    } finally {
+      passFinished(moreToDo);
+    }
+  }
+
+  // returns true if it stopped with more to evict
+  private boolean evict() {
+    Set<String> followed = new HashSet<String>(new ChannelSetManager(mContext, R.array.content_array).channelSet()
+        .getChannelIds());
+    List<RequestInfo.Info> infos = mRequestInfo.allByLastAccess();
+    long now = System.currentTimeMillis();
+    int evicted = 0;
+
+    removeUnfollowedChannels(followed);
+
+    Map<String, Long> bytes = new HashMap<String, Long>();
+    new DatabaseAccess(mContext, DatabaseTables.videoTable()).addBytesByRequest(bytes);
+    new DatabaseAccess(mContext, DatabaseTables.playlistTable()).addBytesByRequest(bytes);
+
+    long total = 0;
+    for (Long requestBytes : bytes.values())
+      total += requestBytes;
+
+    // expired lists first, whatever the budget
+    Iterator<RequestInfo.Info> iterator = infos.iterator();
+    while (iterator.hasNext()) {
+      RequestInfo.Info info = iterator.next();
+
+      if (now - info.lastAccess > timeToLive(info.type)) {
+        evict(info, followed);
+        total -= bytesOf(bytes, info.request);
+        iterator.remove();
+
+        if (++evicted == MAX_EVICTIONS_PER_PASS)
+          return true;
+      }
+    }
+
+    // then least recently used while over budget, infos is oldest first
+    for (RequestInfo.Info info : infos) {
+      if (total <= BYTE_BUDGET || now - info.lastAccess < RECENT_ACCESS)
+        break;
+
+      evict(info, followed);
+      total -= bytesOf(bytes, info.request);
+
+      if (++evicted == MAX_EVICTIONS_PER_PASS)
+        return total > BYTE_BUDGET;
+    }
+
+    return false;
+  }
+
+  private long bytesOf(Map<String, Long> bytes, String request) {
+    Long result = bytes.get(request);
+
+    return result != null ? result : 0;
+  }
+
+  private long timeToLive(String type) {
+    if (type == null)
+      return 14 * DAY;
+
+    switch (ListServiceRequest.RequestType.valueOf(type)) {
+      case SEARCH:
+        return 2 * DAY;
+      case LIKED:
+      case SUBSCRIPTIONS:
+      case CATEGORIES:
+        return 30 * DAY;
+      case RELATED:
+      case PLAYLISTS:
+      case VIDEOS:
+      default:
+        return 14 * DAY;
+    }
+  }
+
+  private void evict(RequestInfo.Info info, Set<String> followed) {
+    // a playlist's videos don't know their channel, so those keep their hidden rows too, as do lists from
+    // before request info was recorded
+    boolean keepHidden = info.type == null || ListServiceRequest.RequestType.VIDEOS.toString()
+        .equals(info.type) || (info.channel != null && followed.contains(info.channel));
+
+    DUtils.log("evicting: " + info.request + (keepHidden ? " (keeping hidden)" : ""));
+
+    new DatabaseAccess(mContext, DatabaseTables.videoTable()).deleteAllRows(info.request, keepHidden);
+    new DatabaseAccess(mContext, DatabaseTables.playlistTable()).deleteAllRows(info.request, keepHidden);
+
+    new PagingCheckpoints(mContext).clear(info.request);
+    mRequestInfo.remove(info.request);
+  }
+
+  // channel info rows are only needed for the channels in the switcher
+  private void removeUnfollowedChannels(Set<String> followed) {
+    DatabaseAccess access = new DatabaseAccess(mContext, DatabaseTables.channelTable());
+
+    for (YouTubeData channel : access.getItems(DatabaseTables.ALL_ITEMS, null, 0)) {
+      if (channel.mChannel != null && !followed.contains(channel.mChannel))
+        access.deleteAllRows(channel.mChannel);
+    }
+  }
+}
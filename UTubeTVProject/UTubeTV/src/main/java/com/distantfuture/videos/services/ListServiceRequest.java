@@ -288,8 +288,37 @@ public class ListServiceRequest {
     return null;
   }
 
-  public void runTask(Context context, boolean hasFetchedData, boolean refresh) {
-    new ListServiceTask(context, this, hasFetchedData, refresh);
+  // uploads are newest first, so a refresh can stop paging once it reaches videos we already have.  Not user
+  // playlists (VIDEOS), new videos usually go at the end of those
+  public boolean incrementalSync() {
+    return type() == RequestType.RELATED && relatedType() == YouTubeAPI.RelatedPlaylistType.UPLOADS;
+  }
+
+  // how long a fetched list is served from the db before it's revalidated in the background
+  public long freshFor() {
+    final long minute = 60 * 1000;
+
+    switch (type()) {
+      case LIKED:
+        return 15 * minute;
+      case SEARCH:
+      case SUBSCRIPTIONS:
+        return 60 * minute;
+      case RELATED:
+      case PLAYLISTS:
+        return 6 * 60 * minute;
+      case VIDEOS:
+        return 12 * 60 * minute;
+      case CATEGORIES:
+        return 24 * 60 * minute;
+    }
+
+    return 60 * minute;
+  }
+
+  // visible is false for prefetches, see ListServiceTask
+  public void runTask(Context context, boolean refresh, boolean visible) {
+    new ListServiceTask(context, this, refresh, visible);
   }
 
   public enum RequestType {RELATED, SUBSCRIPTIONS, SEARCH, CATEGORIES, LIKED, PLAYLISTS, VIDEOS}
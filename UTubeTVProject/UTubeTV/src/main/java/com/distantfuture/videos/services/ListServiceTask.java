@@ -3,39 +3,57 @@ package com.distantfuture.videos.services;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
+import android.text.TextUtils;
 
 import com.distantfuture.videos.activities.AuthActivity;
 import com.distantfuture.videos.database.DatabaseAccess;
 import com.distantfuture.videos.database.DatabaseTables;
+import com.distantfuture.videos.database.PagingCheckpoints;
+import com.distantfuture.videos.database.RequestInfo;
 import com.distantfuture.videos.database.YouTubeData;
 import com.distantfuture.videos.misc.AppUtils;
 import com.distantfuture.videos.misc.BusEvents;
 import com.distantfuture.videos.misc.DUtils;
+import com.distantfuture.videos.youtube.QuotaBudget;
 import com.distantfuture.videos.youtube.YouTubeAPI;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import de.greenrobot.event.EventBus;
 
 public class ListServiceTask {
+  private static final int MAX_CHUNKS_IN_FLIGHT = 4;  // info requests allowed to run at the same time
   private Context context;
 
-  public ListServiceTask(Context context, final ListServiceRequest request, final boolean hasFetchedData, boolean refresh) {
+  // visible is whether the user asked for the list.  Prefetches don't count as a use, otherwise a list that is only
+  // ever prefetched would never look old to CacheEvictor
+  public ListServiceTask(Context context, final ListServiceRequest request, boolean refresh, boolean visible) {
     this.context = context;
 
-    if (!refresh) {
-      if (!hasFetchedData) {
-        DatabaseAccess access = new DatabaseAccess(context, request.databaseTable());
-
-        Cursor cursor = access.getCursor(DatabaseTables.ALL_ITEMS, request.requestIdentifier());
-        if (!cursor.moveToFirst())
-          refresh = true;
+    // for CacheEvictor, lists nobody looks at are dropped first
+    if (visible && request.databaseTable() != null)
+      new RequestInfo(context).touch(request.requestIdentifier(), request.type().toString(), request.channel());
 
-        cursor.close();
+    if (!refresh) {
+      // a stale list is still shown, YouTubeService revalidates it afterwards.  Only fetch now if there's nothing
+      if (!hasCachedData(request))
+        refresh = true;
+    } else {
+      // when the quota is running low, lists we already have are refreshed less often
+      if (!QuotaBudget.instance(context).shouldRefresh(request.requestIdentifier(), hasCachedData(request))) {
+        DUtils.log("quota low, using cached data for: " + request.requestIdentifier());
+        refresh = false;
       }
     }
 
@@ -54,6 +72,31 @@ public class ListServiceTask {
     EventBus.getDefault().post(new BusEvents.YouTubeFragmentDataReady());
   }
 
+  // true if the list was never fetched, or not within request.freshFor()
+  public static boolean isStale(Context context, ListServiceRequest request) {
+    if (request.databaseTable() == null)
+      return false;  // not cached, always fetched
+
+    long lastFetch = new RequestInfo(context).lastFetch(request.requestIdentifier());
+
+    return System.currentTimeMillis() - lastFetch > request.freshFor();
+  }
+
+  private boolean hasCachedData(ListServiceRequest request) {
+    if (request.databaseTable() == null)
+      return false;
+
+    DatabaseAccess access = new DatabaseAccess(context, request.databaseTable());
+
+    // visible rows, an evicted list can still have its hidden rows
+    Cursor cursor = access.getCursor(DatabaseTables.VISIBLE_ITEMS, request.requestIdentifier());
+    boolean result = cursor.moveToFirst();
+
+    cursor.close();
+
+    return result;
+  }
+
   private List<YouTubeData> prepareDataFromNet(List<YouTubeData> inList, Set<String> currentListSavedData, String requestID) {
     for (YouTubeData data : inList) {
       // set the request id
@@ -98,7 +141,7 @@ public class ListServiceTask {
   private void updateDataFromInternet(ListServiceRequest request, YouTubeAPI helper) {
     String playlistID;
     boolean removeAllFromDB = true;
-    List<YouTubeData> resultList = null;
+    boolean removeEmptyPlaylists = false;
 
     // do we have internet access?
     if (!AppUtils.instance(context).hasNetworkConnection()) {
@@ -108,6 +151,22 @@ public class ListServiceTask {
 
     YouTubeAPI.BaseListResults listResults = null;
 
+    switch (request.type()) {
+      case RELATED:
+      case VIDEOS:
+        removeAllFromDB = false;
+        break;
+      case PLAYLISTS:
+        removeAllFromDB = false;
+
+        // remove any playlists with 0 videos
+        removeEmptyPlaylists = true;
+        break;
+    }
+
+    final ResultsWriter writer = new ResultsWriter(request, removeAllFromDB, removeEmptyPlaylists);
+    YouTubeAPI.BaseListResults walked = null;
+
     switch (request.type()) {
       case RELATED:
         YouTubeAPI.RelatedPlaylistType type = request.relatedType();
@@ -116,16 +175,13 @@ public class ListServiceTask {
         playlistID = helper.relatedPlaylistID(type, channelID);
 
         if (playlistID != null) // probably needed authorization and failed
-          resultList = retrieveVideoList(request, helper, playlistID, null, request.maxResults());
-
-        removeAllFromDB = false;
+          walked = retrieveVideoList(request, helper, playlistID, null, request.maxResults(), writer);
         break;
       case VIDEOS:
         playlistID = request.playlist();
 
         // can't use request.maxResults() since we have to get everything and sort it
-        resultList = retrieveVideoList(request, helper, playlistID, null, 0);
-        removeAllFromDB = false;
+        walked = retrieveVideoList(request, helper, playlistID, null, 0, writer);
         break;
       case SEARCH:
         String query = request.query();
@@ -137,19 +193,7 @@ public class ListServiceTask {
       case PLAYLISTS:
         String channel = request.channel();
 
-        resultList = retrieveVideoList(request, helper, null, channel, request.maxResults());
-
-        // remove any playlists with 0 videos
-        Iterator<YouTubeData> iterator = resultList.iterator();
-        while (iterator.hasNext()) {
-          YouTubeData data = iterator.next();
-
-          if (data.mItemCount == 0) {
-            iterator.remove();
-          }
-        }
-
-        removeAllFromDB = false;
+        walked = retrieveVideoList(request, helper, null, channel, request.maxResults(), writer);
         break;
       case SUBSCRIPTIONS:
         listResults = helper.subscriptionListResults(false);
@@ -159,27 +203,32 @@ public class ListServiceTask {
         break;
     }
 
-    if (resultList == null) {
-      if (listResults != null) {
-        resultList = listResults.getAllItems(request.maxResults());
-      }
-    }
+    if (listResults != null) {
+      // each page is written to the db as soon as it arrives
+      listResults.getAllItemsPipelined(request.maxResults(), new YouTubeAPI.PageListener() {
+        @Override
+        public boolean onPage(List<YouTubeData> items) {
+          writer.write(items);
 
-    if (resultList != null) {
-      DatabaseAccess database = new DatabaseAccess(context, request.databaseTable());
+          return true;
+        }
+      });
 
-      Set currentListSavedData = saveExistingListState(database, request.requestIdentifier());
+      walked = listResults;
+    }
 
-      resultList = prepareDataFromNet(resultList, currentListSavedData, request.requestIdentifier());
+    // a walk that got to the end (or stopped on purpose) leaves no resume token, anything else tries again next time.
+    // Rows missing because an info request failed make it incomplete too
+    boolean completed = walked != null && walked.resumeToken() == null && !writer.missedRows();
 
-      if (removeAllFromDB)
-        database.deleteAllRows(request.requestIdentifier());
-      database.insertItems(resultList);
-    }
+    writer.finish(completed);
+
+    if (completed && request.databaseTable() != null)
+      new RequestInfo(context).fetched(request.requestIdentifier());
   }
 
-  private List<YouTubeData> retrieveVideoList(ListServiceRequest request, YouTubeAPI helper, String playlistID, String channelID, int maxResults) {
-    List<YouTubeData> result = new ArrayList<YouTubeData>();
+  // returns the results it walked, null if the request couldn't be made
+  private YouTubeAPI.BaseListResults retrieveVideoList(ListServiceRequest request, final YouTubeAPI helper, String playlistID, String channelID, int maxResults, ResultsWriter writer) {
     YouTubeAPI.BaseListResults videoResults;
 
     if (playlistID != null)
@@ -188,56 +237,102 @@ public class ListServiceTask {
       videoResults = helper.channelPlaylistsResults(channelID, false);
 
     if (videoResults != null) {
-      List<YouTubeData> videoData = videoResults.getAllItems(maxResults);
+      final YouTubeAPI.BaseListResults results = videoResults;
+      final InfoChunkFetcher fetcher = new InfoChunkFetcher(helper, playlistID != null, writer);
+      final Set<String> existingIds = existingContentIds(request);
+      final PagingCheckpoints checkpoints = new PagingCheckpoints(context);
+      final String requestIdentifier = request.requestIdentifier();
+
+      // the process was killed part way through the last walk, continue where it got to
+      String startToken = null;
+      PagingCheckpoints.Checkpoint checkpoint = checkpoints.get(requestIdentifier);
+      if (checkpoint != null) {
+        DUtils.log("resuming from checkpoint: " + requestIdentifier);
+
+        // the ids written before the process died are in the table, so existingIds already has them
+        startToken = checkpoint.nextToken;
+      }
 
-      // extract just the video ids from list
-      List<String> videoIds = YouTubeData.contentIdsList(videoData);
+      // delta sync, stop at the first page where we already have every video.  Not while resuming, the
+      // pages we skipped over are already known but the ones after the checkpoint aren't
+      final boolean incremental = checkpoint == null && request.incrementalSync() && existingIds.size() > 0;
 
-      // remove videos that we already have...
-      videoIds = removeVideosWeAlreadyHave(request, videoIds);
+      try {
+        // as each page of ids arrives, ask for the info on the ones we don't have and write whatever info is ready
+        videoResults.getAllItemsPipelined(maxResults, new YouTubeAPI.PageListener() {
+          @Override
+          public boolean onPage(List<YouTubeData> items) {
+            // token that fetched this page, resumeToken() moves on after we return
+            String pageToken = results.resumeToken();
 
-      final int limit = YouTubeAPI.youTubeMaxResultsLimit();
+            // extract just the video ids from list
+            List<String> videoIds = YouTubeData.contentIdsList(items);
+
+            // remove videos that we already have...
+            List<String> newIds = removeVideosWeAlreadyHave(existingIds, videoIds);
 
-      for (int n = 0; n < videoIds.size(); n += limit) {
-        int chunkSize = Math.min(videoIds.size(), n + limit);
-        List<String> chunk = videoIds.subList(n, chunkSize);
+            fetcher.submit(newIds, pageToken);
+            fetcher.writeCompleted(false);
 
-        if (playlistID != null)
-          videoResults = helper.videoInfoListResults(chunk);
-        else
-          videoResults = helper.playlistInfoListResults(chunk);
+            if (incremental && newIds.isEmpty()) {
+              DUtils.log("delta sync done, page already known: " + DUtils.currentMethod());
+              return false;
+            }
 
-        result.addAll(videoResults.getItems(0));
+            // resume at the oldest page that still has info in flight, everything before it is in the db
+            String oldestPending = fetcher.oldestPendingPageToken();
+            checkpoints.save(requestIdentifier, oldestPending != null ? oldestPending : pageToken);
+
+            return true;
+          }
+        }, !incremental, startToken);
+      } finally {
+        fetcher.finish();
+
+        // everything submitted is written now.  "" means it failed on the first page, nothing to resume.  A resumed
+        // walk that failed on its first page has a token YouTube won't take, the next walk starts from the top
+        String resumeToken = videoResults.resumeToken();
+        if (TextUtils.isEmpty(resumeToken))
+          checkpoints.clear(requestIdentifier);
+        else if (startToken != null && startToken.equals(resumeToken)) {
+          DUtils.log("checkpoint token failed, clearing: " + requestIdentifier);
+          checkpoints.clear(requestIdentifier);
+        } else
+          checkpoints.save(requestIdentifier, resumeToken);
       }
     }
 
-    return result;
+    return videoResults;
   }
 
-  private List<String> removeVideosWeAlreadyHave(ListServiceRequest request, List<String> newVideoIds) {
-    List<String> result = newVideoIds;  // return same list if not modified
+  private Set<String> existingContentIds(ListServiceRequest request) {
+    Set<String> result = new HashSet<String>();
 
     DatabaseAccess database = new DatabaseAccess(context, request.databaseTable());
     List<YouTubeData> existingItems = database.getItems(DatabaseTables.CONTENT_ONLY, request.requestIdentifier(), 0);
 
     if (existingItems != null) {
-      Set existingIds = new HashSet<String>(existingItems.size());
-
       for (YouTubeData data : existingItems) {
         String videoOrPl = data.mVideo == null ? data.mPlaylist : data.mVideo;
 
         if (videoOrPl != null) {
-          existingIds.add(videoOrPl);
+          result.add(videoOrPl);
         }
       }
+    }
+
+    return result;
+  }
 
-      if (existingIds.size() > 0) {
-        result = new ArrayList<String>(newVideoIds.size());
+  private List<String> removeVideosWeAlreadyHave(Set<String> existingIds, List<String> newVideoIds) {
+    List<String> result = newVideoIds;  // return same list if not modified
 
-        for (String videoId : newVideoIds) {
-          if (!existingIds.contains(videoId)) {
-            result.add(videoId);
-          }
+    if (existingIds.size() > 0) {
+      result = new ArrayList<String>(newVideoIds.size());
+
+      for (String videoId : newVideoIds) {
+        if (!existingIds.contains(videoId)) {
+          result.add(videoId);
         }
       }
     }
@@ -250,4 +345,166 @@ public class ListServiceTask {
 
     return result;
   }
-}
\ No newline at end of file
+
+  // ===================================================================
+  // ResultsWriter - commits each batch from the net in its own short transaction
+
+  private class ResultsWriter {
+    private final DatabaseAccess mDatabase;
+    private final String mRequestIdentifier;
+    private final Set<String> mHiddenIds;
+    private final boolean mReplaceExisting;
+    private final boolean mRemoveEmptyPlaylists;
+    // video or playlist ids written so far, when replacing the rows not in here are deleted at the end
+    private final Set<String> mWrittenIds = new HashSet<String>();
+    private boolean mMissedRows = false;
+
+    public ResultsWriter(ListServiceRequest request, boolean replaceExisting, boolean removeEmptyPlaylists) {
+      super();
+
+      mDatabase = new DatabaseAccess(context, request.databaseTable());
+      mRequestIdentifier = request.requestIdentifier();
+      mReplaceExisting = replaceExisting;
+      mRemoveEmptyPlaylists = removeEmptyPlaylists;
+
+      mHiddenIds = saveExistingListState(mDatabase, mRequestIdentifier);
+    }
+
+    public void write(List<YouTubeData> batch) {
+      if (mRemoveEmptyPlaylists) {
+        Iterator<YouTubeData> iterator = batch.iterator();
+        while (iterator.hasNext()) {
+          YouTubeData data = iterator.next();
+
+          if (data.mItemCount == 0) {
+            iterator.remove();
+          }
+        }
+      }
+
+      batch = prepareDataFromNet(batch, mHiddenIds, mRequestIdentifier);
+
+      // rows already there are updated in place, the old list stays up while the new one loads
+      mDatabase.insertItems(batch);
+
+      if (mReplaceExisting)
+        mWrittenIds.addAll(YouTubeData.contentIdsList(batch));
+    }
+
+    // some of the list never reached the db
+    public void rowsMissed() {
+      mMissedRows = true;
+    }
+
+    public boolean missedRows() {
+      return mMissedRows;
+    }
+
+    // whatever didn't come back this time is gone, everything if nothing came back.  Only after a complete walk,
+    // a failed or refused one leaves the cached rows alone
+    public void finish(boolean walkCompleted) {
+      if (mReplaceExisting && walkCompleted)
+        mDatabase.deleteItemsNotIn(mRequestIdentifier, mWrittenIds);
+    }
+  }
+
+  // ===================================================================
+  // InfoChunkFetcher - asks for video or playlist info 50 ids at a time, up to MAX_CHUNKS_IN_FLIGHT
+  // requests run in parallel.  Results are written in the original order of the ids
+
+  private class InfoChunkFetcher {
+    private final YouTubeAPI mHelper;
+    private final boolean mVideos;
+    private final ResultsWriter mWriter;
+    private final ExecutorService mExecutor;
+    private final LinkedList<PendingChunk> mPending = new LinkedList<PendingChunk>();
+
+    public InfoChunkFetcher(YouTubeAPI helper, boolean videos, ResultsWriter writer) {
+      super();
+
+      mHelper = helper;
+      mVideos = videos;
+      mWriter = writer;
+      mExecutor = Executors.newFixedThreadPool(MAX_CHUNKS_IN_FLIGHT);
+    }
+
+    // pageToken is the token of the page these ids came from
+    public void submit(List<String> contentIds, String pageToken) {
+      final int limit = YouTubeAPI.youTubeMaxResultsLimit();
+
+      for (int n = 0; n < contentIds.size(); n += limit) {
+        final List<String> chunk = new ArrayList<String>(contentIds.subList(n, Math.min(contentIds.size(), n + limit)));
+
+        Future<List<YouTubeData>> future = mExecutor.submit(new Callable<List<YouTubeData>>() {
+          @Override
+          public List<YouTubeData> call() throws Exception {
+            YouTubeAPI.BaseListResults infoResults;
+
+            if (mVideos)
+              infoResults = mHelper.videoInfoListResults(chunk);
+            else
+              infoResults = mHelper.playlistInfoListResults(chunk);
+
+            List<YouTubeData> items = infoResults.getItems(0);
+
+            // getItems swallows the error and returns what it had
+            if (infoResults.failed())
+              throw new IOException("info request failed");
+
+            return items;
+          }
+        });
+
+        mPending.add(new PendingChunk(future, pageToken));
+      }
+    }
+
+    // writes finished chunks in order, stops at the first one still running unless wait is true
+    public void writeCompleted(boolean wait) {
+      try {
+        while (!mPending.isEmpty()) {
+          PendingChunk chunk = mPending.peek();
+
+          if (!wait && !chunk.mFuture.isDone())
+            break;
+
+          mPending.poll();
+
+          try {
+            mWriter.write(chunk.mFuture.get());
+          } catch (ExecutionException e) {
+            DUtils.log("InfoChunkFetcher exception: " + e.getMessage());
+            mWriter.rowsMissed();
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        mWriter.rowsMissed();
+      }
+    }
+
+    // null if nothing is waiting to be written
+    public String oldestPendingPageToken() {
+      PendingChunk chunk = mPending.peek();
+
+      return chunk != null ? chunk.mPageToken : null;
+    }
+
+    public void finish() {
+      writeCompleted(true);
+      mExecutor.shutdownNow();
+    }
+  }
+
+  private static class PendingChunk {
+    private final Future<List<YouTubeData>> mFuture;
+    private final String mPageToken;
+
+    public PendingChunk(Future<List<YouTubeData>> future, String pageToken) {
+      super();
+
+      mFuture = future;
+      mPageToken = pageToken;
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package com.distantfuture.videos.services;
+
+import android.os.Bundle;
+
+import com.distantfuture.videos.misc.DUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// runs service requests on a small pool of threads.  Lower priority values run first, requests with the same identifier
+// are coalesced while queued or running, and queued requests can be cancelled
+public class RequestScheduler {
+  public static final int PRIORITY_VISIBLE = 0;  // the fragment the user is looking at
+  public static final int PRIORITY_PREFETCH = 1;
+  public static final int PRIORITY_BACKGROUND = 2;
+
+  private static final int NUM_THREADS = 3;
+  private final ThreadPoolExecutor mExecutor;
+  private final Map<String, ScheduledRequest> mQueued = new HashMap<String, ScheduledRequest>();
+  private final Map<String, ScheduledRequest> mRunning = new HashMap<String, ScheduledRequest>();
+  private final RequestHandler mHandler;
+  private long mSequence = 0;
+
+  public RequestScheduler(RequestHandler handler) {
+    super();
+
+    mHandler = handler;
+
+    mExecutor = new ThreadPoolExecutor(NUM_THREADS, NUM_THREADS, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>());
+    mExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  // returns false if the request was merged into one already queued or running
+  public synchronized boolean schedule(String identifier, Bundle request, boolean refresh, int priority) {
+    ScheduledRequest queued = mQueued.get(identifier);
+
+    if (queued != null) {
+      queued.mRefresh |= refresh;
+
+      // move it up to the more important lane
+      if (priority < queued.mPriority) {
+        if (mExecutor.remove(queued)) {
+          queued.mPriority = priority;
+          mExecutor.execute(queued);
+        }
+      }
+
+      return false;
+    }
+
+    ScheduledRequest running = mRunning.get(identifier);
+
+    if (running != null) {
+      // same request already in flight
+      if (running.mRefresh || !refresh)
+        return false;
+
+      // a refresh came in while a plain load was running, run it after that finishes
+      if (running.mFollowUp == null)
+        running.mFollowUp = new ScheduledRequest(identifier, request, refresh, priority, mSequence++);
+
+      return false;
+    }
+
+    ScheduledRequest scheduled = new ScheduledRequest(identifier, request, refresh, priority, mSequence++);
+    mQueued.put(identifier, scheduled);
+    mExecutor.execute(scheduled);
+
+    return true;
+  }
+
+  // only requests that haven't started can be cancelled, returns true if removed
+  public synchronized boolean cancel(String identifier) {
+    boolean result = false;
+
+    // if a worker already took it off the executor queue, startRequest() sees it's gone and skips it
+    ScheduledRequest queued = mQueued.remove(identifier);
+    if (queued != null) {
+      mExecutor.remove(queued);
+      result = true;
+    }
+
+    ScheduledRequest running = mRunning.get(identifier);
+    if (running != null)
+      running.mFollowUp = null;
+
+    if (result)
+      checkIdle();
+
+    return result;
+  }
+
+  public synchronized boolean isIdle() {
+    return mQueued.isEmpty() && mRunning.isEmpty();
+  }
+
+  public void shutdown() {
+    mExecutor.shutdownNow();
+  }
+
+  private synchronized boolean startRequest(ScheduledRequest request) {
+    // was cancelled or replaced while waiting in the queue
+    if (mQueued.get(request.mIdentifier) != request)
+      return false;
+
+    mQueued.remove(request.mIdentifier);
+    mRunning.put(request.mIdentifier, request);
+
+    return true;
+  }
+
+  private synchronized void finishRequest(ScheduledRequest request) {
+    mRunning.remove(request.mIdentifier);
+
+    ScheduledRequest followUp = request.mFollowUp;
+    if (followUp != null) {
+      mQueued.put(followUp.mIdentifier, followUp);
+      mExecutor.execute(followUp);
+    }
+
+    checkIdle();
+  }
+
+  private void checkIdle() {
+    if (isIdle())
+      mHandler.schedulerIdle();
+  }
+
+  public interface RequestHandler {
+    // called on a worker thread, priority is the one it ran at
+    public void handleRequest(Bundle request, boolean refresh, int priority);
+
+    public void schedulerIdle();
+  }
+
+  private class ScheduledRequest implements Runnable, Comparable<ScheduledRequest> {
+    private final String mIdentifier;
+    private final Bundle mRequest;
+    private final long mSequence;
+    private boolean mRefresh;
+    private int mPriority;
+    private ScheduledRequest mFollowUp;
+
+    public ScheduledRequest(String identifier, Bundle request, boolean refresh, int priority, long sequence) {
+      super();
+
+      mIdentifier = identifier;
+      mRequest = request;
+      mRefresh = refresh;
+      mPriority = priority;
+      mSequence = sequence;
+    }
+
+    @Override
+    public void run() {
+      if (!startRequest(this))
+        return;
+
+      try {
+        boolean refresh;
+        int priority;
+        synchronized (RequestScheduler.this) {
+          refresh = mRefresh;
+          priority = mPriority;
+        }
+
+        mHandler.handleRequest(mRequest, refresh, priority);
+      } catch (Exception e) {
+        e.printStackTrace();
+        DUtils.log(String.format("%s exception: %s", DUtils.currentMethod(), e.getMessage()));
+      } finally {
+        finishRequest(this);
+      }
+    }
+
+    // priority first, then first come first served
+    @Override
+    public int compareTo(ScheduledRequest another) {
+      if (mPriority != another.mPriority)
+        return mPriority < another.mPriority ? -1 : 1;
+
+      return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+    }
+  }
+}
@@ -1,60 +1,198 @@
 package com.distantfuture.videos.services;
 
-import android.app.IntentService;
+import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 
+import com.distantfuture.videos.content.PrefetchPlanner;
 import com.distantfuture.videos.misc.DUtils;
 
-import java.util.HashSet;
-import java.util.Set;
+public class YouTubeService extends Service implements RequestScheduler.RequestHandler {
+  private static final String ACTION_CANCEL = "cancel";
+  private static final String SUBSCRIPTIONS_IDENTIFIER = "subscriptions";
+  private static final String EVICTION_IDENTIFIER = "eviction";
+  private static final String PREFETCH_IDENTIFIER = "prefetch";
+  private static final String VISIBLE_REVALIDATION = "visible_revalidation";
+  private RequestScheduler mScheduler;
+  private Handler mMainHandler;
+  private int mLastStartId;  // main thread only
 
-public class YouTubeService extends IntentService {
-  private Set mHasFetchedDataMap = new HashSet<String>();
-
-  public YouTubeService() {
-    super("YouTubeListService");
+  public static void startListRequest(Context context, ListServiceRequest request, boolean refresh) {
+    startListRequest(context, request, refresh, RequestScheduler.PRIORITY_VISIBLE);
   }
 
-  public static void startListRequest(Context context, ListServiceRequest request, boolean refresh) {
-    startRequest(context, request.toBundle(), refresh);
+  public static void startListRequest(Context context, ListServiceRequest request, boolean refresh, int priority) {
+    startRequest(context, request.toBundle(), refresh, priority);
   }
 
   public static void startSubscriptionRequest(Context context, SubscriptionsServiceRequest request) {
-    startRequest(context, request.toBundle(), false);
+    startRequest(context, request.toBundle(), false, RequestScheduler.PRIORITY_VISIBLE);
   }
 
-  public static void startRequest(Context context, Bundle requestBundle, boolean refresh) {
+  public static void startRequest(Context context, Bundle requestBundle, boolean refresh, int priority) {
     context = context.getApplicationContext();
 
     Intent i = new Intent(context, YouTubeService.class);
     i.putExtra("request", requestBundle);
     i.putExtra("refresh", refresh);
+    i.putExtra("priority", priority);
+    context.startService(i);
+  }
+
+  // plans prefetches of the lists the user is likely to open next, behind anything visible.  See PrefetchPlanner
+  public static void startPrefetch(Context context) {
+    Bundle request = new Bundle();
+    request.putBoolean(PREFETCH_IDENTIFIER, true);
+
+    startRequest(context, request, false, RequestScheduler.PRIORITY_PREFETCH);
+  }
+
+  // drops the request if it hasn't started yet, used when the fragment that wanted it goes away
+  public static void cancelListRequest(Context context, ListServiceRequest request) {
+    context = context.getApplicationContext();
+
+    Intent i = new Intent(context, YouTubeService.class);
+    i.setAction(ACTION_CANCEL);
+    i.putExtra("request", request.toBundle());
     context.startService(i);
   }
 
   @Override
-  protected void onHandleIntent(Intent intent) {
-    try {
-      ListServiceRequest listServiceRequest = ListServiceRequest.fromBundle(intent.getBundleExtra("request"));
-      if (listServiceRequest != null) {
-        boolean refresh = intent.getBooleanExtra("refresh", false);
+  public void onCreate() {
+    super.onCreate();
 
-        boolean hasFetchedData = mHasFetchedDataMap.contains(listServiceRequest.requestIdentifier());
-        mHasFetchedDataMap.add(listServiceRequest.requestIdentifier());
+    mScheduler = new RequestScheduler(this);
+    mMainHandler = new Handler(Looper.getMainLooper());
+  }
 
-        listServiceRequest.runTask(this, hasFetchedData, refresh);
-      } else {
-        SubscriptionsServiceRequest subscriptionsServiceRequest = SubscriptionsServiceRequest.fromBundle(intent.getBundleExtra("request"));
+  @Override
+  public void onDestroy() {
+    mMainHandler.removeCallbacks(mStopIfIdle);
+    mScheduler.shutdown();
 
-        if (subscriptionsServiceRequest != null) {
-          subscriptionsServiceRequest.runTask(this);
+    super.onDestroy();
+  }
+
+  @Override
+  public IBinder onBind(Intent intent) {
+    return null;
+  }
+
+  @Override
+  public int onStartCommand(Intent intent, int flags, int startId) {
+    mLastStartId = startId;
+
+    if (intent != null) {
+      try {
+        Bundle request = intent.getBundleExtra("request");
+        String identifier = identifierForRequest(request);
+
+        if (identifier != null) {
+          if (ACTION_CANCEL.equals(intent.getAction())) {
+            mScheduler.cancel(identifier);
+          } else {
+            boolean refresh = intent.getBooleanExtra("refresh", false);
+            int priority = intent.getIntExtra("priority", RequestScheduler.PRIORITY_VISIBLE);
+
+            mScheduler.schedule(identifier, request, refresh, priority);
+          }
         }
+      } catch (Exception e) {
+        e.printStackTrace();
+        DUtils.log(String.format("%s exception: %s", DUtils.currentMethod(), e.getMessage()));
       }
-    } catch (Exception e) {
-      e.printStackTrace();
-      DUtils.log(String.format("%s exception: %s", DUtils.currentMethod(), e.getMessage()));
     }
+
+    // a cancel or a coalesced request might leave nothing to do
+    if (mScheduler.isIdle())
+      schedulerIdle();
+
+    return START_NOT_STICKY;
   }
-}
\ No newline at end of file
+
+  private String identifierForRequest(Bundle request) {
+    ListServiceRequest listServiceRequest = ListServiceRequest.fromBundle(request);
+    if (listServiceRequest != null)
+      return listServiceRequest.requestIdentifier();
+
+    if (SubscriptionsServiceRequest.fromBundle(request) != null)
+      return SUBSCRIPTIONS_IDENTIFIER;
+
+    if (request.getBoolean(PREFETCH_IDENTIFIER))
+      return PREFETCH_IDENTIFIER;
+
+    return null;
+  }
+
+  // cache eviction runs behind anything the user is waiting for, see CacheEvictor
+  private void scheduleEviction() {
+    Bundle request = new Bundle();
+    request.putBoolean(EVICTION_IDENTIFIER, true);
+
+    mScheduler.schedule(EVICTION_IDENTIFIER, request, false, RequestScheduler.PRIORITY_BACKGROUND);
+  }
+
+  @Override
+  public void handleRequest(Bundle request, boolean refresh, int priority) {
+    if (request.getBoolean(EVICTION_IDENTIFIER)) {
+      new CacheEvictor(this).runPass();
+
+      return;
+    }
+
+    if (request.getBoolean(PREFETCH_IDENTIFIER)) {
+      new PrefetchPlanner(this).run();
+
+      return;
+    }
+
+    ListServiceRequest listServiceRequest = ListServiceRequest.fromBundle(request);
+    if (listServiceRequest != null) {
+      boolean visible = priority == RequestScheduler.PRIORITY_VISIBLE || request.getBoolean(VISIBLE_REVALIDATION);
+
+      listServiceRequest.runTask(this, refresh, visible);
+
+      // the cached rows are already showing, bring a stale list up to date behind whatever the user is waiting
+      // for.  It's running, so the scheduler runs this refresh after it.  A revalidation of a list the user
+      // opened still counts as a use
+      if (!refresh && ListServiceTask.isStale(this, listServiceRequest)) {
+        DUtils.log("stale, revalidating: " + listServiceRequest.requestIdentifier());
+
+        Bundle revalidation = new Bundle(request);
+        revalidation.putBoolean(VISIBLE_REVALIDATION, visible);
+
+        mScheduler.schedule(listServiceRequest.requestIdentifier(), revalidation, true, RequestScheduler.PRIORITY_BACKGROUND);
+      }
+
+      if (CacheEvictor.isDue())
+        scheduleEviction();
+    } else {
+      SubscriptionsServiceRequest subscriptionsServiceRequest = SubscriptionsServiceRequest.fromBundle(request);
+
+      if (subscriptionsServiceRequest != null) {
+        subscriptionsServiceRequest.runTask(this);
+      }
+    }
+  }
+
+  // called on a worker thread.  Stopping happens on the main thread like onStartCommand, so a request that came
+  // in after the worker went idle is either already scheduled (and we don't stop) or has a newer start id
+  @Override
+  public void schedulerIdle() {
+    mMainHandler.post(mStopIfIdle);
+  }
+
+  private final Runnable mStopIfIdle = new Runnable() {
+    @Override
+    public void run() {
+      if (mScheduler.isIdle()) {
+        // won't stop if another request came in after mLastStartId
+        stopSelfResult(mLastStartId);
+      }
+    }
+  };
+}
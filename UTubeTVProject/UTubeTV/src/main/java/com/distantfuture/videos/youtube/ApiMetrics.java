@@ -0,0 +1,142 @@
+package com.distantfuture.videos.youtube;
+
+import com.distantfuture.videos.misc.DUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+// per endpoint call counts, latency histogram and bytes read for the YouTube Data API, process lifetime only
+public class ApiMetrics {
+  // upper bounds of the latency buckets in milliseconds, the last bucket catches everything slower
+  private static final long[] LATENCY_BUCKETS = {100, 250, 500, 1000, 2000, 5000};
+  private static final Map<String, EndpointStats> sStats = new TreeMap<String, EndpointStats>();
+
+  public static void record(String endpoint, long latencyMillis, long bytes, boolean failed) {
+    synchronized (sStats) {
+      EndpointStats stats = sStats.get(endpoint);
+
+      if (stats == null) {
+        stats = new EndpointStats();
+        sStats.put(endpoint, stats);
+      }
+
+      stats.add(latencyMillis, bytes, failed);
+    }
+  }
+
+  // "YouTube$PlaylistItems$List" becomes "PlaylistItems.List"
+  public static String endpointName(Object request) {
+    String name = request.getClass().getName();
+
+    int index = name.indexOf('$');
+    if (index != -1)
+      name = name.substring(index + 1);
+
+    return name.replace('$', '.');
+  }
+
+  public static String summary() {
+    StringBuilder result = new StringBuilder();
+
+    synchronized (sStats) {
+      for (Map.Entry<String, EndpointStats> entry : sStats.entrySet()) {
+        result.append(entry.getKey()).append(": ").append(entry.getValue().toString()).append("\n");
+      }
+    }
+
+    return result.toString();
+  }
+
+  public static void dump() {
+    DUtils.log("API metrics:\n" + summary());
+  }
+
+  private static class EndpointStats {
+    private final int[] mHistogram = new int[LATENCY_BUCKETS.length + 1];
+    private int mCalls;
+    private int mFailures;
+    private long mBytes;
+    private long mTotalLatency;
+
+    public void add(long latencyMillis, long bytes, boolean failed) {
+      mCalls++;
+      mBytes += bytes;
+      mTotalLatency += latencyMillis;
+
+      if (failed)
+        mFailures++;
+
+      int bucket = 0;
+      while (bucket < LATENCY_BUCKETS.length && latencyMillis > LATENCY_BUCKETS[bucket])
+        bucket++;
+
+      mHistogram[bucket]++;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder();
+
+      result.append(String.format("calls %d, failed %d, bytes %d, avg %dms [", mCalls, mFailures, mBytes, mCalls > 0 ? mTotalLatency / mCalls : 0));
+
+      for (int i = 0; i < mHistogram.length; i++) {
+        if (i > 0)
+          result.append(", ");
+
+        if (i < LATENCY_BUCKETS.length)
+          result.append("<=").append(LATENCY_BUCKETS[i]);
+        else
+          result.append(">").append(LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1]);
+
+        result.append(": ").append(mHistogram[i]);
+      }
+
+      return result.append("]").toString();
+    }
+  }
+
+  // counts the bytes handed to the json parser
+  public static class CountingInputStream extends FilterInputStream {
+    private long mCount = 0;
+
+    public CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    public long count() {
+      return mCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int result = super.read();
+
+      if (result != -1)
+        mCount++;
+
+      return result;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+      int result = super.read(buffer, offset, count);
+
+      if (result > 0)
+        mCount += result;
+
+      return result;
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+      long result = super.skip(byteCount);
+
+      mCount += result;
+
+      return result;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.distantfuture.videos.youtube;
+
+import com.distantfuture.videos.misc.DUtils;
+import com.google.api.client.http.HttpResponseException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+
+// one per endpoint.  After FAILURE_THRESHOLD retryable failures in a row we stop calling that endpoint for
+// OPEN_INTERVAL, then let a single request through to see if YouTube is back
+public class CircuitBreaker {
+  private static final int FAILURE_THRESHOLD = 5;
+  private static final long OPEN_INTERVAL = 30 * 1000;
+  private static final Map<String, CircuitBreaker> sBreakers = new HashMap<String, CircuitBreaker>();
+  private final String mEndpoint;
+  private int mConsecutiveFailures = 0;
+  private long mOpenedAt = 0;
+  private boolean mTrialInFlight = false;
+
+  private CircuitBreaker(String endpoint) {
+    super();
+
+    mEndpoint = endpoint;
+  }
+
+  public static CircuitBreaker forEndpoint(String endpoint) {
+    synchronized (sBreakers) {
+      CircuitBreaker result = sBreakers.get(endpoint);
+
+      if (result == null) {
+        result = new CircuitBreaker(endpoint);
+        sBreakers.put(endpoint, result);
+      }
+
+      return result;
+    }
+  }
+
+  // whether a failed request says anything about the endpoint.  Refusing it ourselves (quota) or the request
+  // being cancelled doesn't, http errors only do if they're the retryable kind
+  public static boolean isEndpointFailure(IOException e) {
+    if (e instanceof QuotaBudget.QuotaExceededException || e instanceof CircuitOpenException)
+      return false;
+
+    if (Thread.currentThread().isInterrupted())
+      return false;
+
+    // SocketTimeoutException is an InterruptedIOException too, but that one is the endpoint's fault
+    if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))
+      return false;
+
+    if (e instanceof HttpResponseException)
+      return RetryPolicy.isRetryable(e);
+
+    return true;
+  }
+
+  public synchronized boolean allowRequest() {
+    if (mConsecutiveFailures < FAILURE_THRESHOLD)
+      return true;
+
+    // half open, one request gets to find out if the endpoint recovered
+    if (!mTrialInFlight && System.currentTimeMillis() - mOpenedAt >= OPEN_INTERVAL) {
+      mTrialInFlight = true;
+      return true;
+    }
+
+    return false;
+  }
+
+  public synchronized void recordSuccess() {
+    mConsecutiveFailures = 0;
+    mTrialInFlight = false;
+  }
+
+  // the request ended without telling us anything, a trial request can be tried again
+  public synchronized void recordAbandoned() {
+    mTrialInFlight = false;
+  }
+
+  public synchronized void recordFailure() {
+    mConsecutiveFailures++;
+
+    if (mConsecutiveFailures >= FAILURE_THRESHOLD) {
+      if (mTrialInFlight || mConsecutiveFailures == FAILURE_THRESHOLD)
+        DUtils.log("circuit open for " + mEndpoint);
+
+      mOpenedAt = System.currentTimeMillis();
+      mTrialInFlight = false;
+    }
+  }
+
+  public static class CircuitOpenException extends IOException {
+    public CircuitOpenException(String endpoint) {
+      super("YouTube not responding, skipped " + endpoint);
+    }
+  }
+}
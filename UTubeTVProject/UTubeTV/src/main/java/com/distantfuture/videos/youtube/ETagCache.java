@@ -0,0 +1,133 @@
+package com.distantfuture.videos.youtube;
+
+import android.content.Context;
+
+import com.distantfuture.videos.database.YouTubeData;
+import com.distantfuture.videos.misc.DUtils;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.jakewharton.disklrucache.DiskLruCache;
+
+import java.io.File;
+import java.lang.reflect.Type;
+import java.security.MessageDigest;
+import java.util.List;
+
+// remembers the etag and the converted rows for each request url, so we can send If-None-Match
+// and reuse the rows when YouTube answers 304 Not Modified
+public class ETagCache {
+  private static final int VERSION = 1;
+  private static final long MAX_SIZE = 4 * 1024 * 1024;
+  private static final int INDEX_ETAG = 0;
+  private static final int INDEX_NEXT_TOKEN = 1;
+  private static final int INDEX_ITEMS = 2;
+  private static ETagCache sInstance = null;
+  private final Gson mGson = new Gson();
+  private final Type mItemsType = new TypeToken<List<YouTubeData>>() {
+  }.getType();
+  private DiskLruCache mCache;
+
+  private ETagCache(Context context) {
+    super();
+
+    try {
+      File directory = new File(context.getCacheDir(), "etags");
+
+      mCache = DiskLruCache.open(directory, VERSION, 3, MAX_SIZE);
+    } catch (Exception e) {
+      DUtils.log("ETagCache open exception: " + e.getMessage());
+    }
+  }
+
+  public static synchronized ETagCache instance(Context context) {
+    if (sInstance == null)
+      sInstance = new ETagCache(context.getApplicationContext());
+
+    return sInstance;
+  }
+
+  // returns null if we have nothing for this url
+  public Entry get(String url) {
+    Entry result = null;
+
+    if (mCache != null) {
+      DiskLruCache.Snapshot snapshot = null;
+
+      try {
+        snapshot = mCache.get(keyForUrl(url));
+
+        if (snapshot != null) {
+          String nextToken = snapshot.getString(INDEX_NEXT_TOKEN);
+
+          result = new Entry(snapshot.getString(INDEX_ETAG), nextToken.length() > 0 ? nextToken : null, snapshot
+              .getString(INDEX_ITEMS));
+        }
+      } catch (Exception e) {
+        DUtils.log("ETagCache get exception: " + e.getMessage());
+      } finally {
+        if (snapshot != null)
+          snapshot.close();
+      }
+    }
+
+    return result;
+  }
+
+  // items are serialized right away, so callers are free to modify them afterwards
+  public void put(String url, String etag, String nextPageToken, List<YouTubeData> items) {
+    if (mCache != null && etag != null && items != null) {
+      DiskLruCache.Editor editor = null;
+
+      try {
+        editor = mCache.edit(keyForUrl(url));
+
+        // null if another thread is writing this entry, no big deal
+        if (editor != null) {
+          editor.set(INDEX_ETAG, etag);
+          editor.set(INDEX_NEXT_TOKEN, nextPageToken != null ? nextPageToken : "");
+          editor.set(INDEX_ITEMS, mGson.toJson(items, mItemsType));
+          editor.commit();
+          editor = null;
+        }
+      } catch (Exception e) {
+        DUtils.log("ETagCache put exception: " + e.getMessage());
+      } finally {
+        if (editor != null)
+          editor.abortUnlessCommitted();
+      }
+    }
+  }
+
+  // DiskLruCache keys must be [a-z0-9_-]{1,64}
+  private String keyForUrl(String url) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("MD5");
+    byte[] hash = digest.digest(url.getBytes("UTF-8"));
+
+    StringBuilder result = new StringBuilder(hash.length * 2);
+    for (byte b : hash) {
+      result.append(Character.forDigit((b >> 4) & 0xf, 16));
+      result.append(Character.forDigit(b & 0xf, 16));
+    }
+
+    return result.toString();
+  }
+
+  public class Entry {
+    public final String etag;
+    public final String nextPageToken;
+    private final String mItemsJson;
+
+    private Entry(String etag, String nextPageToken, String itemsJson) {
+      super();
+
+      this.etag = etag;
+      this.nextPageToken = nextPageToken;
+      mItemsJson = itemsJson;
+    }
+
+    // new objects every call, the caller owns them
+    public List<YouTubeData> items() {
+      return mGson.fromJson(mItemsJson, mItemsType);
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package com.distantfuture.videos.youtube;
+
+import android.content.Context;
+
+import com.distantfuture.videos.misc.AppUtils;
+import com.distantfuture.videos.misc.DUtils;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpStatusCodes;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.YouTubeRequest;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+// keeps a count of the API units we spend each day.  YouTube resets the quota at midnight pacific time.
+// When we get close to the limit, refreshes of lists we already have are spaced out, and once it's used up
+// we stick to cached data until the next day
+public class QuotaBudget {
+  public static final int DAILY_LIMIT = 10000;
+  private static final int SEARCH_COST = 100;
+  private static final int LIST_COST = 1;
+  private static final float PRESSURE_RATIO = 0.8f;
+  private static final long PRESSURE_REFRESH_INTERVAL = 60 * 60 * 1000;
+  private static final int SAVE_INTERVAL = 10;  // units between saves to prefs
+  private static QuotaBudget sInstance = null;
+  private final Context mContext;
+  private final SimpleDateFormat mDayFormat;
+  private final Map<String, Long> mLastRefresh = new HashMap<String, Long>();
+  private String mDay;
+  private int mUnitsUsed;
+  private int mUnsavedUnits;
+  private boolean mExhausted;
+
+  private QuotaBudget(Context context) {
+    super();
+
+    mContext = context;
+
+    mDayFormat = new SimpleDateFormat("yyyyMMdd", Locale.US);
+    mDayFormat.setTimeZone(TimeZone.getTimeZone("America/Los_Angeles"));
+
+    AppUtils appUtils = AppUtils.instance(mContext);
+    mDay = appUtils.quotaDay();
+    mUnitsUsed = appUtils.quotaUnitsUsed();
+    mExhausted = appUtils.quotaExhausted();
+  }
+
+  public static synchronized QuotaBudget instance(Context context) {
+    if (sInstance == null)
+      sInstance = new QuotaBudget(context.getApplicationContext());
+
+    return sInstance;
+  }
+
+  public static int costForRequest(YouTubeRequest<?> request) {
+    if (request instanceof YouTube.Search.List)
+      return SEARCH_COST;
+
+    return LIST_COST;
+  }
+
+  // the 403 YouTube sends when the project is out of quota
+  public static boolean isQuotaError(HttpResponseException e) {
+    if (e.getStatusCode() != HttpStatusCodes.STATUS_CODE_FORBIDDEN)
+      return false;
+
+    String content = e.getContent();
+
+    return content != null && (content.contains("quotaExceeded") || content.contains("dailyLimitExceeded"));
+  }
+
+  public synchronized boolean canSpend(int units) {
+    rollDay();
+
+    return !mExhausted && mUnitsUsed + units <= DAILY_LIMIT;
+  }
+
+  public synchronized void charge(int units) {
+    rollDay();
+
+    mUnitsUsed += units;
+    mUnsavedUnits += units;
+
+    if (mUnsavedUnits >= SAVE_INTERVAL)
+      save();
+  }
+
+  public synchronized void markExhausted() {
+    rollDay();
+
+    if (!mExhausted) {
+      DUtils.log("YouTube quota exhausted for " + mDay);
+
+      mExhausted = true;
+      save();
+    }
+  }
+
+  public synchronized int unitsUsed() {
+    rollDay();
+
+    return mUnitsUsed;
+  }
+
+  public synchronized boolean isUnderPressure() {
+    rollDay();
+
+    return mExhausted || mUnitsUsed >= DAILY_LIMIT * PRESSURE_RATIO;
+  }
+
+  // returns false if the caller should keep using its cached rows rather than go to the net
+  public synchronized boolean shouldRefresh(String requestIdentifier, boolean hasCachedData) {
+    if (!hasCachedData)
+      return true;
+
+    long now = System.currentTimeMillis();
+
+    if (isUnderPressure()) {
+      if (mExhausted)
+        return false;
+
+      Long lastRefresh = mLastRefresh.get(requestIdentifier);
+      if (lastRefresh != null && now - lastRefresh < PRESSURE_REFRESH_INTERVAL)
+        return false;
+    }
+
+    mLastRefresh.put(requestIdentifier, now);
+
+    return true;
+  }
+
+  private void rollDay() {
+    String today = mDayFormat.format(new Date());
+
+    if (!today.equals(mDay)) {
+      mDay = today;
+      mUnitsUsed = 0;
+      mExhausted = false;
+      mLastRefresh.clear();
+
+      save();
+    }
+  }
+
+  private void save() {
+    mUnsavedUnits = 0;
+
+    AppUtils.instance(mContext).saveQuotaUsage(mDay, mUnitsUsed, mExhausted);
+  }
+
+  public static class QuotaExceededException extends IOException {
+    public QuotaExceededException(String endpoint) {
+      super("YouTube quota used up, skipped " + endpoint);
+    }
+  }
+}
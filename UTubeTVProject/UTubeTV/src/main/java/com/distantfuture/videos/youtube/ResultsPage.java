@@ -0,0 +1,96 @@
+package com.distantfuture.videos.youtube;
+
+import com.distantfuture.videos.database.YouTubeData;
+import com.google.api.client.util.GenericData;
+
+import java.util.Collection;
+import java.util.List;
+
+// one page of a list request, either a fresh response from YouTube, rows the StreamingDecoder already built,
+// or the rows we saved when YouTube answered 304
+public class ResultsPage {
+  private final Object mResponse;
+  private final List<YouTubeData> mCachedItems;
+  private final List<YouTubeData> mDecodedItems;
+  private final String mNextPageToken;
+  private final String mETag;
+  private final String mUrl;
+
+  private ResultsPage(Object response, List<YouTubeData> cachedItems, List<YouTubeData> decodedItems, String nextPageToken, String etag, String url) {
+    super();
+
+    mResponse = response;
+    mCachedItems = cachedItems;
+    mDecodedItems = decodedItems;
+    mNextPageToken = nextPageToken;
+    mETag = etag;
+    mUrl = url;
+  }
+
+  public static ResultsPage fromResponse(Object response, String etag, String url) {
+    String nextPageToken = null;
+
+    // all the list responses are GenericJson, saves checking every response class
+    if (response instanceof GenericData)
+      nextPageToken = (String) ((GenericData) response).get("nextPageToken");
+
+    return new ResultsPage(response, null, null, nextPageToken, etag, url);
+  }
+
+  public static ResultsPage fromDecoded(StreamingDecoder.Page page, String etag, String url) {
+    return new ResultsPage(null, null, page.items, page.nextPageToken, etag, url);
+  }
+
+  public static ResultsPage fromCache(ETagCache.Entry entry, String url) {
+    return new ResultsPage(null, entry.items(), null, entry.nextPageToken, entry.etag, url);
+  }
+
+  public boolean isNotModified() {
+    return mCachedItems != null;
+  }
+
+  // null if not modified or decoded
+  public Object response() {
+    return mResponse;
+  }
+
+  // null unless the page was read with a StreamingDecoder
+  public List<YouTubeData> decodedItems() {
+    return mDecodedItems;
+  }
+
+  // null if not modified
+  public List<YouTubeData> cachedItems() {
+    return mCachedItems;
+  }
+
+  public String nextPageToken() {
+    return mNextPageToken;
+  }
+
+  public String etag() {
+    return mETag;
+  }
+
+  public String url() {
+    return mUrl;
+  }
+
+  // number of items YouTube returned, known before the page is converted
+  public int itemCount() {
+    if (mCachedItems != null)
+      return mCachedItems.size();
+
+    if (mDecodedItems != null)
+      return mDecodedItems.size();
+
+    if (mResponse instanceof GenericData) {
+      Object items = ((GenericData) mResponse).get("items");
+
+      if (items instanceof Collection)
+        return ((Collection) items).size();
+    }
+
+    return 0;
+  }
+}
@@ -0,0 +1,66 @@
+package com.distantfuture.videos.youtube;
+
+import com.google.api.client.http.HttpResponseException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+// which failures are worth another try and how long to wait before it.  Backoff doubles each attempt
+// with random jitter so a burst of failed requests doesn't retry in lockstep
+public class RetryPolicy {
+  public static final int MAX_ATTEMPTS = 4;
+  private static final long INITIAL_DELAY = 500;
+  private static final long MAX_DELAY = 8000;
+  private static final Random sRandom = new Random();
+
+  // 5xx, 429, rate limit 403s, timeouts and dropped connections.  Quota 403s never are, they last all day
+  public static boolean isRetryable(IOException e) {
+    // cancelled, not a network problem
+    if (Thread.currentThread().isInterrupted())
+      return false;
+
+    if (e instanceof HttpResponseException) {
+      HttpResponseException responseException = (HttpResponseException) e;
+      int code = responseException.getStatusCode();
+
+      if (code >= 500 || code == 429)
+        return true;
+
+      if (code == 403) {
+        String content = responseException.getContent();
+
+        return content != null && (content.contains("rateLimitExceeded") || content.contains("userRateLimitExceeded"));
+      }
+
+      return false;
+    }
+
+    return e instanceof SocketTimeoutException || e instanceof SocketException;
+  }
+
+  // attempt is 1 for the first retry
+  public static long backoffMillis(int attempt) {
+    long delay = Math.min(MAX_DELAY, INITIAL_DELAY << Math.min(attempt - 1, 16));
+
+    int jitter;
+    synchronized (sRandom) {
+      jitter = sRandom.nextInt((int) (delay / 2) + 1);
+    }
+
+    // somewhere between half and all of the delay
+    return delay / 2 + jitter;
+  }
+
+  public static void sleepBeforeRetry(int attempt) throws IOException {
+    try {
+      Thread.sleep(backoffMillis(attempt));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      throw new InterruptedIOException("retry cancelled");
+    }
+  }
+}
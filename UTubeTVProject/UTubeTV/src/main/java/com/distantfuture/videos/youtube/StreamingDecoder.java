@@ -0,0 +1,157 @@
+package com.distantfuture.videos.youtube;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.distantfuture.videos.database.YouTubeData;
+import com.distantfuture.videos.misc.Utils;
+import com.google.api.client.util.DateTime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+// reads a list response with a pull parser and fills YouTubeData as it goes, so items aren't built twice
+// (once as google-api-client model objects, then again as YouTubeData).  Knows the paths we ask for in mFields,
+// anything else is skipped
+public class StreamingDecoder {
+  // what a plain string "id" on an item refers to
+  public static final int ID_NONE = 0;
+  public static final int ID_VIDEO = 1;
+  public static final int ID_PLAYLIST = 2;
+  private final int mIdType;
+
+  public StreamingDecoder(int idType) {
+    super();
+
+    mIdType = idType;
+  }
+
+  public Page decode(InputStream content, Charset charset) throws IOException {
+    Page result = new Page();
+    JsonReader reader = new JsonReader(new InputStreamReader(content, charset != null ? charset : Charset.forName("UTF-8")));
+
+    try {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+
+        if (name.equals("nextPageToken"))
+          result.nextPageToken = reader.nextString();
+        else if (name.equals("items") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+          ItemReader itemReader = new ItemReader(reader);
+
+          reader.beginArray();
+          while (reader.hasNext())
+            result.items.add(itemReader.read());
+          reader.endArray();
+        } else
+          reader.skipValue();
+      }
+      reader.endObject();
+    } finally {
+      reader.close();
+    }
+
+    return result;
+  }
+
+  public static class Page {
+    public final List<YouTubeData> items = new ArrayList<YouTubeData>();
+    public String nextPageToken;
+  }
+
+  private class ItemReader {
+    private final JsonReader mReader;
+    private final StringBuilder mPath = new StringBuilder();
+    private YouTubeData mData;
+    private int mThumbnailRank;
+
+    public ItemReader(JsonReader reader) {
+      super();
+
+      mReader = reader;
+    }
+
+    public YouTubeData read() throws IOException {
+      mData = new YouTubeData();
+      mThumbnailRank = 0;
+      mPath.setLength(0);
+
+      readObject();
+
+      return mData;
+    }
+
+    // mPath holds the path of the object we're in, like "snippet/thumbnails/high/"
+    private void readObject() throws IOException {
+      int pathLength = mPath.length();
+
+      mReader.beginObject();
+      while (mReader.hasNext()) {
+        mPath.append(mReader.nextName());
+
+        JsonToken token = mReader.peek();
+        if (token == JsonToken.BEGIN_OBJECT) {
+          mPath.append('/');
+          readObject();
+        } else if (token == JsonToken.NULL || token == JsonToken.BEGIN_ARRAY)
+          mReader.skipValue();
+        else
+          readValue(mPath.toString());
+
+        mPath.setLength(pathLength);
+      }
+      mReader.endObject();
+    }
+
+    private void readValue(String path) throws IOException {
+      if (path.equals("id")) {
+        String id = mReader.nextString();
+
+        if (mIdType == ID_VIDEO)
+          mData.mVideo = id;
+        else if (mIdType == ID_PLAYLIST)
+          mData.mPlaylist = id;
+      } else if (path.equals("contentDetails/videoId") || path.equals("id/videoId"))
+        mData.mVideo = mReader.nextString();
+      else if (path.equals("id/channelId") || path.equals("snippet/channelId") || path.equals("snippet/resourceId/channelId"))
+        mData.mChannel = mReader.nextString();
+      else if (path.equals("snippet/title"))
+        mData.mTitle = mReader.nextString();
+      else if (path.equals("snippet/description"))
+        mData.mDescription = Utils.condenseWhiteSpace(mReader.nextString());
+      else if (path.equals("snippet/publishedAt"))
+        mData.mPublishedDate = DateTime.parseRfc3339(mReader.nextString()).getValue();
+      else if (path.equals("contentDetails/duration"))
+        mData.mDuration = Utils.durationToDuration(mReader.nextString());
+      else if (path.equals("contentDetails/itemCount"))
+        mData.mItemCount = mReader.nextLong();
+      else if (path.startsWith("snippet/thumbnails/") && path.endsWith("/url"))
+        readThumbnail(path);
+      else
+        mReader.skipValue();
+    }
+
+    // same preference as thumbnailURL(), maxres then high then default
+    private void readThumbnail(String path) throws IOException {
+      int rank = 0;
+
+      if (path.equals("snippet/thumbnails/maxres/url"))
+        rank = 3;
+      else if (path.equals("snippet/thumbnails/high/url"))
+        rank = 2;
+      else if (path.equals("snippet/thumbnails/default/url"))
+        rank = 1;
+
+      if (rank > mThumbnailRank) {
+        mThumbnailRank = rank;
+        mData.mThumbnail = mReader.nextString();
+      } else
+        mReader.skipValue();
+    }
+  }
+}
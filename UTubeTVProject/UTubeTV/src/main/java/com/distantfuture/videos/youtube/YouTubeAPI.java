@@ -3,6 +3,7 @@ package com.distantfuture.videos.youtube;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.distantfuture.videos.database.YouTubeData;
@@ -11,13 +12,15 @@ import com.distantfuture.videos.misc.DUtils;
 import com.distantfuture.videos.misc.Utils;
 import com.google.android.youtube.player.YouTubeIntents;
 import com.google.android.youtube.player.YouTubeStandalonePlayer;
-import com.google.api.client.extensions.android.json.AndroidJsonFactory;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAuthIOException;
 import com.google.api.client.googleapis.extensions.android.gms.auth.UserRecoverableAuthIOException;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.client.http.HttpRequestInitializer;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpStatusCodes;
 import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.YouTubeRequest;
 import com.google.api.services.youtube.model.Channel;
 import com.google.api.services.youtube.model.ChannelContentDetails;
 import com.google.api.services.youtube.model.ChannelListResponse;
@@ -36,10 +39,16 @@ import com.google.api.services.youtube.model.VideoCategory;
 import com.google.api.services.youtube.model.VideoCategoryListResponse;
 import com.google.api.services.youtube.model.VideoListResponse;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class YouTubeAPI {
 
@@ -51,6 +60,8 @@ public class YouTubeAPI {
   private YouTube youTube;
   private boolean mUseAuthCredentials = false; // needs to check Content or something to get this for realz
   private boolean mUseDefaultAccount;
+  private ETagCache mETagCache;
+  private QuotaBudget mBudget;
 
   public YouTubeAPI(Context context, boolean useAuthCredentials, boolean useDefaultAccount, YouTubeAPIListener listener) {
     super();
@@ -59,6 +70,8 @@ public class YouTubeAPI {
     mContext = context.getApplicationContext();
     mUseAuthCredentials = useAuthCredentials;
     mUseDefaultAccount = useDefaultAccount;
+    mETagCache = ETagCache.instance(mContext);
+    mBudget = QuotaBudget.instance(mContext);
   }
 
   public static void playMovie(Activity activity, String movieID, boolean fullScreen) {
@@ -81,7 +94,8 @@ public class YouTubeAPI {
     return mYouTubeMaxResultsLimit;
   }
 
-  public YouTube youTube() {
+  // synchronized since the list service fetches chunks of video info on several threads at once
+  public synchronized YouTube youTube() {
     if (youTube == null) {
       try {
         HttpRequestInitializer credentials;
@@ -91,8 +105,8 @@ public class YouTubeAPI {
         else
           credentials = Auth.nullCredentials(mContext);
 
-        youTube = new YouTube.Builder(new NetHttpTransport(), new AndroidJsonFactory(), credentials).setApplicationName("YouTubeAPI")
-            .build();
+        // shared across instances so connections are reused
+        youTube = YouTubeClients.client(credentials, mUseAuthCredentials);
       } catch (Exception e) {
         e.printStackTrace();
       } catch (Throwable t) {
@@ -120,7 +134,7 @@ public class YouTubeAPI {
       channelRequest.setFields("items/id");
       channelRequest.setKey(Auth.devKey());
 
-      ChannelListResponse channelResult = channelRequest.execute();
+      ChannelListResponse channelResult = (ChannelListResponse) executeResponse(channelRequest);
 
       List<Channel> channelsList = channelResult.getItems();
 
@@ -187,22 +201,28 @@ public class YouTubeAPI {
 
       channelRequest.setFields(String.format("items(id, snippet/title, snippet/description, %s)", thumbnailField()));
       channelRequest.setKey(Auth.devKey());
-      ChannelListResponse channelResult = channelRequest.execute();
+      ResultsPage page = executePage(channelRequest);
 
-      List<Channel> channelsList = channelResult.getItems();
-      if (channelsList != null) {
+      if (page.isNotModified()) {
+        result.addAll(page.cachedItems());
+      } else {
+        List<Channel> channelsList = ((ChannelListResponse) page.response()).getItems();
+        if (channelsList != null) {
 
-        for (Channel channel : channelsList) {
-          YouTubeData data = new YouTubeData();
+          for (Channel channel : channelsList) {
+            YouTubeData data = new YouTubeData();
 
-          data.mChannel = channel.getId();
-          data.mTitle = channel.getSnippet().getTitle();
-          data.mDescription = channel.getSnippet()
-              .getDescription();  // we want the returns, so don't strip
-          data.mThumbnail = thumbnailURL(channel.getSnippet().getThumbnails());
+            data.mChannel = channel.getId();
+            data.mTitle = channel.getSnippet().getTitle();
+            data.mDescription = channel.getSnippet()
+                .getDescription();  // we want the returns, so don't strip
+            data.mThumbnail = thumbnailURL(channel.getSnippet().getThumbnails());
 
-          result.add(data);
+            result.add(data);
+          }
         }
+
+        mETagCache.put(page.url(), page.etag(), page.nextPageToken(), result);
       }
     } catch (UserRecoverableAuthIOException e) {
       handleException(e);
@@ -223,7 +243,7 @@ public class YouTubeAPI {
       channelRequest.setFields("items/id");
       channelRequest.setKey(Auth.devKey());
 
-      ChannelListResponse channelResult = channelRequest.execute();
+      ChannelListResponse channelResult = (ChannelListResponse) executeResponse(channelRequest);
 
       List<Channel> channelsList = channelResult.getItems();
       if (channelsList != null) {
@@ -267,7 +287,7 @@ public class YouTubeAPI {
 
       channelRequest.setFields("items/contentDetails, nextPageToken");
       channelRequest.setKey(Auth.devKey());
-      ChannelListResponse channelResult = channelRequest.execute();
+      ChannelListResponse channelResult = (ChannelListResponse) executeResponse(channelRequest);
 
       List<Channel> channelsList = channelResult.getItems();
       if (channelsList != null) {
@@ -343,6 +363,14 @@ public class YouTubeAPI {
     } else if (e.getClass().equals(GoogleAuthIOException.class)) {
       // could be a bad user name, let's pass it to the listener to check
       doHandleAuthIntent(null);
+    } else if (e instanceof CircuitBreaker.CircuitOpenException) {
+      DUtils.log(e.getMessage());
+
+      doHandleExceptionMessage("YouTube isn't responding, try again later");
+    } else if (e instanceof QuotaBudget.QuotaExceededException) {
+      DUtils.log(e.getMessage());
+
+      doHandleExceptionMessage("YouTube limit reached for today, try again tomorrow");
     } else if (e.getClass().equals(GoogleJsonResponseException.class)) {
       GoogleJsonResponseException r = (GoogleJsonResponseException) e;
 
@@ -357,6 +385,132 @@ public class YouTubeAPI {
     }
   }
 
+  // runs the request, sending If-None-Match if we have an etag for the url.
+  // A 304 returns a page holding the rows we converted last time.  Transient failures are retried
+  // with backoff, and if the endpoint keeps failing its circuit breaker skips the call until it recovers
+  private ResultsPage executePage(YouTubeRequest<?> request) throws IOException {
+    return executePage(request, null);
+  }
+
+  // pass a decoder to build YouTubeData straight from the response stream instead of parsing into the model classes
+  private ResultsPage executePage(YouTubeRequest<?> request, StreamingDecoder decoder) throws IOException {
+    String url = request.buildHttpRequestUrl().build();
+    ETagCache.Entry cached = mETagCache.get(url);
+    String endpoint = ApiMetrics.endpointName(request);
+    CircuitBreaker breaker = CircuitBreaker.forEndpoint(endpoint);
+    int attempt = 0;
+
+    while (true) {
+      if (!breaker.allowRequest()) {
+        if (cached != null) {
+          DUtils.log("circuit open, using cached page: " + endpoint);
+          return ResultsPage.fromCache(cached, url);
+        }
+
+        throw new CircuitBreaker.CircuitOpenException(endpoint);
+      }
+
+      try {
+        ResultsPage result = executePageOnce(request, decoder, url, cached, endpoint);
+
+        breaker.recordSuccess();
+
+        return result;
+      } catch (IOException e) {
+        boolean retryable = RetryPolicy.isRetryable(e);
+
+        // any other http error means YouTube is up and answering, a quota refusal or a cancel says nothing
+        if (CircuitBreaker.isEndpointFailure(e))
+          breaker.recordFailure();
+        else if (e instanceof HttpResponseException)
+          breaker.recordSuccess();
+        else
+          breaker.recordAbandoned();
+
+        attempt++;
+        if (!retryable || attempt >= RetryPolicy.MAX_ATTEMPTS)
+          throw e;
+
+        DUtils.log(String.format("retry %d for %s: %s", attempt, endpoint, e.getMessage()));
+        RetryPolicy.sleepBeforeRetry(attempt);
+      }
+    }
+  }
+
+  // a single attempt.  Every call is charged to the quota budget and recorded in ApiMetrics
+  private ResultsPage executePageOnce(YouTubeRequest<?> request, StreamingDecoder decoder, String url, ETagCache.Entry cached, String endpoint) throws IOException {
+    int cost = QuotaBudget.costForRequest(request);
+
+    if (!mBudget.canSpend(cost)) {
+      // out of quota, old data beats no data
+      if (cached != null) {
+        DUtils.log("quota used up, using cached page: " + endpoint);
+        return ResultsPage.fromCache(cached, url);
+      }
+
+      throw new QuotaBudget.QuotaExceededException(endpoint);
+    }
+
+    if (cached != null)
+      request.getRequestHeaders().setIfNoneMatch(cached.etag);
+
+    long startTime = SystemClock.elapsedRealtime();
+    long bytes = 0;
+    boolean failed = true;
+
+    try {
+      HttpResponse httpResponse = request.executeUnparsed();
+      mBudget.charge(cost);
+
+      try {
+        ApiMetrics.CountingInputStream content = new ApiMetrics.CountingInputStream(httpResponse.getContent());
+        String etag = httpResponse.getHeaders().getETag();
+        ResultsPage result;
+
+        if (decoder != null) {
+          result = ResultsPage.fromDecoded(decoder.decode(content, httpResponse.getContentCharset()), etag, url);
+        } else {
+          Object response = request.getAbstractGoogleClient()
+              .getObjectParser()
+              .parseAndClose(content, httpResponse.getContentCharset(), request.getResponseClass());
+
+          result = ResultsPage.fromResponse(response, etag, url);
+        }
+
+        bytes = content.count();
+        failed = false;
+
+        return result;
+      } finally {
+        httpResponse.disconnect();
+      }
+    } catch (HttpResponseException e) {
+      if (QuotaBudget.isQuotaError(e)) {
+        mBudget.markExhausted();
+
+        if (cached != null)
+          return ResultsPage.fromCache(cached, url);
+      } else {
+        // YouTube charges for errors and 304s too
+        mBudget.charge(cost);
+      }
+
+      if (cached != null && e.getStatusCode() == HttpStatusCodes.STATUS_CODE_NOT_MODIFIED) {
+        failed = false;
+        return ResultsPage.fromCache(cached, url);
+      }
+
+      throw e;
+    } finally {
+      ApiMetrics.record(endpoint, SystemClock.elapsedRealtime() - startTime, bytes, failed);
+    }
+  }
+
+  // for the one off channel calls, these don't keep their results in the etag cache so they never get a 304
+  private Object executeResponse(YouTubeRequest<?> request) throws IOException {
+    return executePage(request).response();
+  }
+
   private String thumbnailField() {
     String result = "snippet/thumbnails/default/url";
 
@@ -409,41 +563,34 @@ public class YouTubeAPI {
       mFields = "items(contentDetails/videoId), nextPageToken";
     }
 
-    protected List<YouTubeData> itemsForNextToken(String token, long maxResults) {
-      List<PlaylistItem> playlistItemList = null;
-
-      if (mPlaylistID != null) {
-        try {
-          YouTube.PlaylistItems.List listRequest = youTube().playlistItems().list(mPart);
-          listRequest.setPlaylistId(mPlaylistID);
-
-          listRequest.setFields(mFields);
+    protected YouTubeRequest<?> requestForToken(String token, long maxResults) throws IOException {
+      if (mPlaylistID == null)
+        return null;
 
-          listRequest.setPageToken(token);
-          listRequest.setMaxResults(maxResults);
-          listRequest.setKey(Auth.devKey());
-          PlaylistItemListResponse playListResponse = listRequest.execute();
+      YouTube.PlaylistItems.List listRequest = youTube().playlistItems().list(mPart);
+      listRequest.setPlaylistId(mPlaylistID);
 
-          playlistItemList = playListResponse.getItems();
-          response = playListResponse;
+      listRequest.setFields(mFields);
 
-        } catch (UserRecoverableAuthIOException e) {
-          handleResultsException(e);
-        } catch (Exception e) {
-          handleResultsException(e);
-        }
-      }
+      listRequest.setPageToken(token);
+      listRequest.setMaxResults(maxResults);
+      listRequest.setKey(Auth.devKey());
 
-      return itemsToMap(playlistItemList);
+      return listRequest;
     }
 
-    private List<YouTubeData> itemsToMap(List<PlaylistItem> playlistItemList) {
-      // check parameters
-      if (playlistItemList == null)
-        return null;
+    @Override
+    protected StreamingDecoder streamingDecoder() {
+      return new StreamingDecoder(StreamingDecoder.ID_NONE);
+    }
 
+    protected List<YouTubeData> itemsFromResponse(Object response) {
+      List<PlaylistItem> playlistItemList = ((PlaylistItemListResponse) response).getItems();
       List<YouTubeData> result = new ArrayList<YouTubeData>();
 
+      if (playlistItemList == null)
+        return result;
+
       // convert the list into hash maps of video info
       for (PlaylistItem playlistItem : playlistItemList) {
         YouTubeData map = new YouTubeData();
@@ -477,38 +624,27 @@ public class YouTubeAPI {
       mFields = String.format("items(id/%s, snippet/title, snippet/description, %s), nextPageToken", idType, thumbnailField());
     }
 
-    protected List<YouTubeData> itemsForNextToken(String token, long maxResults) {
-      List<SearchResult> result = new ArrayList<SearchResult>();
-      SearchListResponse searchListResponse;
-
-      try {
-        YouTube.Search.List listRequest = youTube().search().list(mPart);
+    protected YouTubeRequest<?> requestForToken(String token, long maxResults) throws IOException {
+      YouTube.Search.List listRequest = youTube().search().list(mPart);
 
-        listRequest.setQ(query);
-        listRequest.setKey(Auth.devKey());
-        listRequest.setType(searchChannels ? "channel" : "video");
-        listRequest.setFields(mFields);
-        listRequest.setMaxResults(maxResults);
+      listRequest.setQ(query);
+      listRequest.setKey(Auth.devKey());
+      listRequest.setType(searchChannels ? "channel" : "video");
+      listRequest.setFields(mFields);
+      listRequest.setMaxResults(maxResults);
 
-        listRequest.setPageToken(token);
-        searchListResponse = listRequest.execute();
-
-        // nasty double cast?
-        response = searchListResponse;
-
-        result.addAll(searchListResponse.getItems());
-      } catch (UserRecoverableAuthIOException e) {
-        handleResultsException(e);
-      } catch (Exception e) {
-        handleResultsException(e);
-      }
+      listRequest.setPageToken(token);
 
-      return itemsToMap(result);
+      return listRequest;
     }
 
-    private List<YouTubeData> itemsToMap(List<SearchResult> playlistItemList) {
+    protected List<YouTubeData> itemsFromResponse(Object response) {
+      List<SearchResult> playlistItemList = ((SearchListResponse) response).getItems();
       List<YouTubeData> result = new ArrayList<YouTubeData>();
 
+      if (playlistItemList == null)
+        return result;
+
       // convert the list into hash maps of video info
       for (SearchResult playlistItem : playlistItemList) {
         YouTubeData map = new YouTubeData();
@@ -538,37 +674,31 @@ public class YouTubeAPI {
       mFields = String.format("items(id, snippet/title, snippet/description, contentDetails/duration, %s), nextPageToken", thumbnailField());
     }
 
-    protected List<YouTubeData> itemsForNextToken(String token, long maxResults) {
-      List<Video> result = new ArrayList<Video>();
-      VideoListResponse searchListResponse;
-
-      try {
-        YouTube.Videos.List listRequest = youTube().videos().list(mPart);
-
-        listRequest.setKey(Auth.devKey());
-        listRequest.setFields(mFields);
-        listRequest.setMyRating("like");
-        listRequest.setMaxResults(maxResults);
+    protected YouTubeRequest<?> requestForToken(String token, long maxResults) throws IOException {
+      YouTube.Videos.List listRequest = youTube().videos().list(mPart);
 
-        listRequest.setPageToken(token);
-        searchListResponse = listRequest.execute();
+      listRequest.setKey(Auth.devKey());
+      listRequest.setFields(mFields);
+      listRequest.setMyRating("like");
+      listRequest.setMaxResults(maxResults);
 
-        // nasty double cast?
-        response = searchListResponse;
+      listRequest.setPageToken(token);
 
-        result.addAll(searchListResponse.getItems());
-      } catch (UserRecoverableAuthIOException e) {
-        handleResultsException(e);
-      } catch (Exception e) {
-        handleResultsException(e);
-      }
+      return listRequest;
+    }
 
-      return itemsToMap(result);
+    @Override
+    protected StreamingDecoder streamingDecoder() {
+      return new StreamingDecoder(StreamingDecoder.ID_VIDEO);
     }
 
-    private List<YouTubeData> itemsToMap(List<Video> playlistItemList) {
+    protected List<YouTubeData> itemsFromResponse(Object response) {
+      List<Video> playlistItemList = ((VideoListResponse) response).getItems();
       List<YouTubeData> result = new ArrayList<YouTubeData>();
 
+      if (playlistItemList == null)
+        return result;
+
       // convert the list into hash maps of video info
       for (Video playlistItem : playlistItemList) {
         YouTubeData map = new YouTubeData();
@@ -606,32 +736,28 @@ public class YouTubeAPI {
       mFields = String.format("items(id, contentDetails/duration, snippet/title, snippet/description, snippet/publishedAt, %s)", thumbnailField());
     }
 
-    protected List<YouTubeData> itemsForNextToken(String tokenNotUsed, long maxResultsNotUsed) {
-      List<Video> result = new ArrayList<Video>();
-      VideoListResponse searchListResponse;
-
-      try {
-        YouTube.Videos.List listRequest = youTube().videos().list(mPart);
-
-        listRequest.setKey(Auth.devKey());
-        listRequest.setFields(mFields);
-        listRequest.setId(TextUtils.join(",", mVideoIds));
+    protected YouTubeRequest<?> requestForToken(String tokenNotUsed, long maxResultsNotUsed) throws IOException {
+      YouTube.Videos.List listRequest = youTube().videos().list(mPart);
 
-        searchListResponse = listRequest.execute();
+      listRequest.setKey(Auth.devKey());
+      listRequest.setFields(mFields);
+      listRequest.setId(TextUtils.join(",", mVideoIds));
 
-        result.addAll(searchListResponse.getItems());
-      } catch (UserRecoverableAuthIOException e) {
-        handleResultsException(e);
-      } catch (Exception e) {
-        handleResultsException(e);
-      }
+      return listRequest;
+    }
 
-      return itemsToMap(result);
+    @Override
+    protected StreamingDecoder streamingDecoder() {
+      return new StreamingDecoder(StreamingDecoder.ID_VIDEO);
     }
 
-    private List<YouTubeData> itemsToMap(List<Video> playlistItemList) {
+    protected List<YouTubeData> itemsFromResponse(Object response) {
+      List<Video> playlistItemList = ((VideoListResponse) response).getItems();
       List<YouTubeData> result = new ArrayList<YouTubeData>();
 
+      if (playlistItemList == null)
+        return result;
+
       // convert the list into hash maps of video info
       for (Video playlistItem : playlistItemList) {
         YouTubeData map = new YouTubeData();
@@ -663,34 +789,23 @@ public class YouTubeAPI {
       mRegionCode = regionCode;
     }
 
-    protected List<YouTubeData> itemsForNextToken(String token, long maxResults) {
-      List<VideoCategory> result = new ArrayList<VideoCategory>();
-      VideoCategoryListResponse categoryListResponse;
-
-      try {
-        YouTube.VideoCategories.List listRequest = youTube().videoCategories().list(mPart);
-
-        listRequest.setKey(Auth.devKey());
-        listRequest.setRegionCode(mRegionCode);
-        listRequest.setFields(mFields);
-
-        categoryListResponse = listRequest.execute();
-
-        result.addAll(categoryListResponse.getItems());
+    protected YouTubeRequest<?> requestForToken(String token, long maxResults) throws IOException {
+      YouTube.VideoCategories.List listRequest = youTube().videoCategories().list(mPart);
 
-        response = categoryListResponse;
-      } catch (UserRecoverableAuthIOException e) {
-        handleResultsException(e);
-      } catch (Exception e) {
-        handleResultsException(e);
-      }
+      listRequest.setKey(Auth.devKey());
+      listRequest.setRegionCode(mRegionCode);
+      listRequest.setFields(mFields);
 
-      return itemsToMap(result);
+      return listRequest;
     }
 
-    private List<YouTubeData> itemsToMap(List<VideoCategory> itemList) {
+    protected List<YouTubeData> itemsFromResponse(Object response) {
+      List<VideoCategory> itemList = ((VideoCategoryListResponse) response).getItems();
       List<YouTubeData> result = new ArrayList<YouTubeData>();
 
+      if (itemList == null)
+        return result;
+
       // convert the list into hash maps of video info
       for (VideoCategory category : itemList) {
         YouTubeData map = new YouTubeData();
@@ -723,35 +838,26 @@ public class YouTubeAPI {
         mFields = String.format("items(snippet/resourceId), nextPageToken");
     }
 
-    protected List<YouTubeData> itemsForNextToken(String token, long maxResults) {
-      List<Subscription> result = new ArrayList<Subscription>();
-
-      try {
-        YouTube.Subscriptions.List listRequest = youTube().subscriptions().list(mPart);
-        listRequest.setMine(true);
-
-        listRequest.setFields(mFields);
-        listRequest.setMaxResults(maxResults);
-        listRequest.setKey(Auth.devKey());
+    protected YouTubeRequest<?> requestForToken(String token, long maxResults) throws IOException {
+      YouTube.Subscriptions.List listRequest = youTube().subscriptions().list(mPart);
+      listRequest.setMine(true);
 
-        listRequest.setPageToken(token);
-        SubscriptionListResponse subscriptionListResponse = listRequest.execute();
+      listRequest.setFields(mFields);
+      listRequest.setMaxResults(maxResults);
+      listRequest.setKey(Auth.devKey());
 
-        response = subscriptionListResponse;
-
-        result.addAll(subscriptionListResponse.getItems());
-      } catch (UserRecoverableAuthIOException e) {
-        handleResultsException(e);
-      } catch (Exception e) {
-        handleResultsException(e);
-      }
+      listRequest.setPageToken(token);
 
-      return itemsToMap(result);
+      return listRequest;
     }
 
-    private List<YouTubeData> itemsToMap(List<Subscription> subscriptionsList) {
+    protected List<YouTubeData> itemsFromResponse(Object response) {
+      List<Subscription> subscriptionsList = ((SubscriptionListResponse) response).getItems();
       List<YouTubeData> result = new ArrayList<YouTubeData>();
 
+      if (subscriptionsList == null)
+        return result;
+
       // convert the list into hash maps of video info
       for (Subscription subscription : subscriptionsList) {
         YouTubeData map = new YouTubeData();
@@ -786,40 +892,36 @@ public class YouTubeAPI {
       mFields = String.format("items(id), nextPageToken");
     }
 
-    protected List<YouTubeData> itemsForNextToken(String token, long maxResults) {
-      List<Playlist> result = new ArrayList<Playlist>();
-
-      try {
-        YouTube.Playlists.List listRequest = youTube().playlists().list(mPart);
-
-        // if channel null, assume the users channel
-        if (mChannelID == null)
-          listRequest.setMine(true);
-        else
-          listRequest.setChannelId(mChannelID);
+    protected YouTubeRequest<?> requestForToken(String token, long maxResults) throws IOException {
+      YouTube.Playlists.List listRequest = youTube().playlists().list(mPart);
 
-        listRequest.setFields(mFields);
-        listRequest.setMaxResults(maxResults);
-        listRequest.setKey(Auth.devKey());
+      // if channel null, assume the users channel
+      if (mChannelID == null)
+        listRequest.setMine(true);
+      else
+        listRequest.setChannelId(mChannelID);
 
-        listRequest.setPageToken(token);
-        PlaylistListResponse subscriptionListResponse = listRequest.execute();
+      listRequest.setFields(mFields);
+      listRequest.setMaxResults(maxResults);
+      listRequest.setKey(Auth.devKey());
 
-        response = subscriptionListResponse;
+      listRequest.setPageToken(token);
 
-        result.addAll(subscriptionListResponse.getItems());
-      } catch (UserRecoverableAuthIOException e) {
-        handleResultsException(e);
-      } catch (Exception e) {
-        handleResultsException(e);
-      }
+      return listRequest;
+    }
 
-      return itemsToMap(result);
+    @Override
+    protected StreamingDecoder streamingDecoder() {
+      return new StreamingDecoder(StreamingDecoder.ID_PLAYLIST);
     }
 
-    private List<YouTubeData> itemsToMap(List<Playlist> playlists) {
+    protected List<YouTubeData> itemsFromResponse(Object response) {
+      List<Playlist> playlists = ((PlaylistListResponse) response).getItems();
       List<YouTubeData> result = new ArrayList<YouTubeData>();
 
+      if (playlists == null)
+        return result;
+
       // convert the list into hash maps of video info
       for (Playlist playlist : playlists) {
         YouTubeData map = new YouTubeData();
@@ -852,33 +954,28 @@ public class YouTubeAPI {
       mFields = String.format("items(id, contentDetails/itemCount, snippet/title, snippet/description, snippet/publishedAt, %s)", thumbnailField());
     }
 
-    protected List<YouTubeData> itemsForNextToken(String tokenNotUsed, long maxResultsNotUsed) {
-      List<Playlist> result = new ArrayList<Playlist>();
-
-      try {
-        YouTube.Playlists.List listRequest = youTube().playlists().list(mPart);
-
-        listRequest.setFields(mFields);
-        listRequest.setKey(Auth.devKey());
-        listRequest.setId(TextUtils.join(",", mPlaylistIds));
+    protected YouTubeRequest<?> requestForToken(String tokenNotUsed, long maxResultsNotUsed) throws IOException {
+      YouTube.Playlists.List listRequest = youTube().playlists().list(mPart);
 
-        PlaylistListResponse subscriptionListResponse = listRequest.execute();
+      listRequest.setFields(mFields);
+      listRequest.setKey(Auth.devKey());
+      listRequest.setId(TextUtils.join(",", mPlaylistIds));
 
-        response = subscriptionListResponse;
-
-        result.addAll(subscriptionListResponse.getItems());
-      } catch (UserRecoverableAuthIOException e) {
-        handleResultsException(e);
-      } catch (Exception e) {
-        handleResultsException(e);
-      }
+      return listRequest;
+    }
 
-      return itemsToMap(result);
+    @Override
+    protected StreamingDecoder streamingDecoder() {
+      return new StreamingDecoder(StreamingDecoder.ID_PLAYLIST);
     }
 
-    private List<YouTubeData> itemsToMap(List<Playlist> playlists) {
+    protected List<YouTubeData> itemsFromResponse(Object response) {
+      List<Playlist> playlists = ((PlaylistListResponse) response).getItems();
       List<YouTubeData> result = new ArrayList<YouTubeData>();
 
+      if (playlists == null)
+        return result;
+
       // convert the list into hash maps of video info
       for (Playlist playlist : playlists) {
         YouTubeData map = new YouTubeData();
@@ -901,16 +998,26 @@ public class YouTubeAPI {
   // BaseListResults
 
   abstract public class BaseListResults {
-    protected Object response;
+    protected ResultsPage response;
     protected String mPart;
     protected String mFields;
+    private String mResumeToken;
+    private boolean mFailed;
 
     public BaseListResults() {
       super();
     }
 
-    // subclasses must implement
-    abstract protected List<YouTubeData> itemsForNextToken(String token, long maxResults);
+    // subclasses must implement, build the request for a page (return null if nothing to request)
+    abstract protected YouTubeRequest<?> requestForToken(String token, long maxResults) throws IOException;
+
+    // subclasses must implement, convert a response returned by the request above into our data
+    abstract protected List<YouTubeData> itemsFromResponse(Object response);
+
+    // subclasses can return a decoder to skip the model classes, it must fill in the same fields as itemsFromResponse
+    protected StreamingDecoder streamingDecoder() {
+      return null;
+    }
 
     public List<YouTubeData> getItems(long maxResults) {
       return getNext(maxResults);
@@ -947,6 +1054,145 @@ public class YouTubeAPI {
       return result;
     }
 
+    // same as getAllItems, but the request for the next page goes out on a worker thread as soon as the
+    // nextPageToken is known, so the network overlaps converting the current page.
+    // pages are handed to the listener (can be null) in order as they are converted
+    public List<YouTubeData> getAllItemsPipelined(int maxResults, PageListener listener) {
+      return getAllItemsPipelined(maxResults, listener, true);
+    }
+
+    // pass false for prefetch if the listener is likely to stop early, the next page is then only requested
+    // after the listener has seen the current page, so we never pay for a page we throw away
+    public List<YouTubeData> getAllItemsPipelined(int maxResults, PageListener listener, boolean prefetch) {
+      return getAllItemsPipelined(maxResults, listener, prefetch, null);
+    }
+
+    // pass the resumeToken() of a walk that failed part way to continue from the last good page, null starts at the top
+    public List<YouTubeData> getAllItemsPipelined(int maxResults, PageListener listener, boolean prefetch, String startToken) {
+      List<YouTubeData> result = new ArrayList<YouTubeData>();
+      ExecutorService worker = Executors.newSingleThreadExecutor();
+
+      mResumeToken = startToken != null ? startToken : "";
+
+      try {
+        int requested = 0;  // raw count of items returned by YouTube, known before converting
+        Future<ResultsPage> pending = responseForTokenAsync(worker, mResumeToken, pageSize(maxResults, requested));
+
+        while (pending != null) {
+          ResultsPage page = pending.get();
+          pending = null;
+
+          if (page == null)
+            break;  // request failed, already handled
+
+          int pageCount = page.itemCount();
+          requested += pageCount;
+
+          String token = page.nextPageToken();
+          boolean hasMore = token != null && pageCount > 0 && (maxResults == 0 || requested < maxResults);
+
+          if (hasMore && prefetch)
+            pending = responseForTokenAsync(worker, token, pageSize(maxResults, requested));
+
+          List<YouTubeData> items = itemsFromPage(page);
+          result.addAll(items);
+
+          if (listener != null && !listener.onPage(items)) {
+            if (pending != null)
+              pending.cancel(true);
+
+            mResumeToken = null;  // stopped on purpose, nothing to resume
+            break;
+          }
+
+          // this page is safely handled, a failure from here on resumes at the next one
+          mResumeToken = hasMore ? token : null;
+
+          if (hasMore && !prefetch)
+            pending = responseForTokenAsync(worker, token, pageSize(maxResults, requested));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        handleResultsException(e);
+      } finally {
+        worker.shutdownNow();
+        done();
+      }
+
+      return result;
+    }
+
+    // null if the last getAllItemsPipelined walk finished, otherwise the token of the page that failed ("" for the first page)
+    public String resumeToken() {
+      return mResumeToken;
+    }
+
+    // true once a request for this list has failed, the items returned so far are incomplete
+    public boolean failed() {
+      return mFailed;
+    }
+
+    protected List<YouTubeData> itemsForNextToken(String token, long maxResults) {
+      ResultsPage page = responseForToken(token, maxResults);
+
+      // request failed, handleResultsException already called done()
+      if (page == null)
+        return null;
+
+      response = page;
+
+      return itemsFromPage(page);
+    }
+
+    // executes the request for a page, returns null on failure
+    protected ResultsPage responseForToken(String token, long maxResults) {
+      ResultsPage result = null;
+
+      try {
+        YouTubeRequest<?> request = requestForToken(token, maxResults);
+
+        if (request != null)
+          result = executePage(request, streamingDecoder());
+      } catch (UserRecoverableAuthIOException e) {
+        handleResultsException(e);
+      } catch (Exception e) {
+        handleResultsException(e);
+      }
+
+      return result;
+    }
+
+    // a 304 reuses the rows saved last time, otherwise convert and save them with the new etag
+    private List<YouTubeData> itemsFromPage(ResultsPage page) {
+      if (page.isNotModified())
+        return page.cachedItems();
+
+      List<YouTubeData> result = page.decodedItems();
+      if (result == null)
+        result = itemsFromResponse(page.response());
+
+      mETagCache.put(page.url(), page.etag(), page.nextPageToken(), result);
+
+      return result;
+    }
+
+    private Future<ResultsPage> responseForTokenAsync(ExecutorService worker, final String token, final long maxResults) {
+      return worker.submit(new Callable<ResultsPage>() {
+        @Override
+        public ResultsPage call() throws Exception {
+          return responseForToken(token, maxResults);
+        }
+      });
+    }
+
+    private long pageSize(int maxResults, int alreadyRequested) {
+      if (maxResults <= 0)
+        return mYouTubeMaxResultsLimit;
+
+      return Math.max(1, Math.min(mYouTubeMaxResultsLimit, maxResults - alreadyRequested));
+    }
+
     private List<YouTubeData> getNext(long maxResults) {
       List<YouTubeData> result = new ArrayList<YouTubeData>();
 
@@ -974,22 +1220,8 @@ public class YouTubeAPI {
 
       if (response == null)
         result = ""; // first time
-      else {
-        // is there a better way of doing this?
-        if (response instanceof SearchListResponse) {
-          result = ((SearchListResponse) response).getNextPageToken();
-        } else if (response instanceof PlaylistItemListResponse) {
-          result = ((PlaylistItemListResponse) response).getNextPageToken();
-        } else if (response instanceof SubscriptionListResponse) {
-          result = ((SubscriptionListResponse) response).getNextPageToken();
-        } else if (response instanceof VideoListResponse) {
-          result = ((VideoListResponse) response).getNextPageToken();
-        } else if (response instanceof PlaylistListResponse) {
-          result = ((PlaylistListResponse) response).getNextPageToken();
-        } else {
-          doHandleExceptionMessage("nextToken bug!");
-        }
-      }
+      else
+        result = response.nextPageToken();
 
       return result;
     }
@@ -999,6 +1231,8 @@ public class YouTubeAPI {
     }
 
     protected void handleResultsException(Exception e) {
+      mFailed = true;
+
       // must call done otherwise we get an endless loop as it continues to retry since it thinks there are still items to fetch
       done();
       handleException(e);
@@ -1006,4 +1240,12 @@ public class YouTubeAPI {
 
   }
 
+  // ========================================================
+  // PageListener
+
+  public interface PageListener {
+    // called with each converted page, return false to stop requesting more pages
+    public boolean onPage(List<YouTubeData> items);
+  }
+
 }
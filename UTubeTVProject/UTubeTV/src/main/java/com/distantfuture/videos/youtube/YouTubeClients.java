@@ -0,0 +1,78 @@
+package com.distantfuture.videos.youtube;
+
+import com.google.api.client.extensions.android.json.AndroidJsonFactory;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.services.youtube.YouTube;
+
+import java.io.IOException;
+
+// one transport and one YouTube client per credential for the whole process.  NetHttpTransport is thread safe and
+// HttpURLConnection pools keep-alive connections per host, so sharing them lets requests reuse sockets and TLS sessions
+public class YouTubeClients {
+  private static final String APPLICATION_NAME = "YouTubeAPI (gzip)";  // google wants "gzip" in the user agent
+  private static final int CONNECT_TIMEOUT = 15 * 1000;
+  private static final int READ_TIMEOUT = 20 * 1000;
+  private static final int MAX_IDLE_CONNECTIONS = 8;
+  private static NetHttpTransport sTransport;
+  private static AndroidJsonFactory sJsonFactory;
+  private static YouTube sAuthClient;
+  private static HttpRequestInitializer sAuthCredentials;
+  private static YouTube sPublicClient;
+
+  public static synchronized YouTube client(HttpRequestInitializer credentials, boolean authorized) {
+    if (authorized) {
+      // Auth.setCredentials() can swap the credential after an account change
+      if (sAuthClient == null || sAuthCredentials != credentials) {
+        sAuthClient = buildClient(credentials);
+        sAuthCredentials = credentials;
+      }
+
+      return sAuthClient;
+    }
+
+    if (sPublicClient == null)
+      sPublicClient = buildClient(credentials);
+
+    return sPublicClient;
+  }
+
+  private static YouTube buildClient(final HttpRequestInitializer credentials) {
+    HttpRequestInitializer initializer = new HttpRequestInitializer() {
+      @Override
+      public void initialize(HttpRequest request) throws IOException {
+        credentials.initialize(request);
+
+        request.setConnectTimeout(CONNECT_TIMEOUT);
+        request.setReadTimeout(READ_TIMEOUT);
+
+        // HttpResponse unzips the content when the server honors this
+        HttpHeaders headers = request.getHeaders();
+        headers.setAcceptEncoding("gzip");
+      }
+    };
+
+    return new YouTube.Builder(transport(), jsonFactory(), initializer).setApplicationName(APPLICATION_NAME).build();
+  }
+
+  private static NetHttpTransport transport() {
+    if (sTransport == null) {
+      // HttpURLConnection keeps idle sockets around for reuse, default is only 5 per host
+      System.setProperty("http.keepAlive", "true");
+      System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+
+      sTransport = new NetHttpTransport();
+    }
+
+    return sTransport;
+  }
+
+  private static AndroidJsonFactory jsonFactory() {
+    if (sJsonFactory == null)
+      sJsonFactory = new AndroidJsonFactory();
+
+    return sJsonFactory;
+  }
+}